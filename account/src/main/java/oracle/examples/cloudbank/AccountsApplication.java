@@ -2,8 +2,10 @@ package oracle.examples.cloudbank;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class AccountsApplication {
 
 	public static void main(String[] args) {
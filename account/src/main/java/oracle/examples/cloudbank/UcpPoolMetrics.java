@@ -0,0 +1,60 @@
+package oracle.examples.cloudbank;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import oracle.ucp.jdbc.JDBCConnectionPoolStatistics;
+import oracle.ucp.jdbc.PoolDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Connection wait metrics of the UCP pool. The pool size gauges (jdbc.connections.*) are provided by Spring Boot.
+ * Nothing is registered when the datasource is not UCP.
+ */
+@Component
+public class UcpPoolMetrics implements MeterBinder {
+
+    private final DataSource dataSource;
+
+    public UcpPoolMetrics(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        PoolDataSource pool;
+        try {
+            if (!dataSource.isWrapperFor(PoolDataSource.class)) return;
+            pool = dataSource.unwrap(PoolDataSource.class);
+        } catch (SQLException e) {
+            return;
+        }
+        Gauge.builder("ucp.connections.pending", pool, p -> statistic(p, JDBCConnectionPoolStatistics::getPendingRequestsCount))
+                .description("requests waiting for a connection")
+                .register(registry);
+        Gauge.builder("ucp.connections.borrowed", pool, p -> statistic(p, JDBCConnectionPoolStatistics::getBorrowedConnectionsCount))
+                .register(registry);
+        Gauge.builder("ucp.connection.wait.average", pool, p -> statistic(p, JDBCConnectionPoolStatistics::getAverageConnectionWaitTime))
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("ucp.connection.wait.peak", pool, p -> statistic(p, JDBCConnectionPoolStatistics::getPeakConnectionWaitTime))
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("ucp.connection.wait.total", pool, p -> statistic(p, JDBCConnectionPoolStatistics::getCumulativeConnectionWaitTime))
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    /**
+     * The statistics are null until the pool has started
+     */
+    private static double statistic(PoolDataSource pool, ToDoubleFunction<JDBCConnectionPoolStatistics> statistic) {
+        JDBCConnectionPoolStatistics statistics = pool.getStatistics();
+        return statistics == null ? Double.NaN : statistic.applyAsDouble(statistics);
+    }
+}
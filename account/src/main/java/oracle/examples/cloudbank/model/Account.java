@@ -2,19 +2,21 @@ package oracle.examples.cloudbank.model;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Column;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.Generated;
 import org.hibernate.annotations.GenerationTime;
 
 import java.util.Date;
 
 @Entity
-@Table(name = "ACCOUNTS")
+@Table(name = "ACCOUNTS", indexes = @Index(name = "ACCOUNTS_CUSTOMER_ID_IDX", columnList = "CUSTOMER_ID, ACCOUNT_ID"))
 @Data
 @NoArgsConstructor
 public class Account {
@@ -43,6 +45,13 @@ public class Account {
     @Column(name = "ACCOUNT_BALANCE")
     private long accountBalance;
 
+    /**
+     * Number of ACCOUNT_BALANCE_SLOTS the balance is striped across, 0 if not striped
+     */
+    @ColumnDefault("0")
+    @Column(name = "ACCOUNT_BALANCE_SLOTS")
+    private int accountBalanceSlots;
+
     public Account(String accountName, String accountType, String accountOtherDetails, String accountCustomerId) {
         this.accountName = accountName;
         this.accountType = accountType;
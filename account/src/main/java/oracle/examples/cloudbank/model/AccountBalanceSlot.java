@@ -0,0 +1,44 @@
+package oracle.examples.cloudbank.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * One sub-balance of a striped account. The balance of a striped account is
+ * ACCOUNTS.ACCOUNT_BALANCE plus the sum of its slots.
+ */
+@Entity
+@Table(name = "ACCOUNT_BALANCE_SLOTS")
+@IdClass(AccountBalanceSlot.SlotId.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountBalanceSlot {
+
+    @Id
+    @Column(name = "ACCOUNT_ID")
+    private long accountId;
+
+    @Id
+    @Column(name = "SLOT")
+    private int slot;
+
+    @Column(name = "SLOT_BALANCE")
+    private long slotBalance;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SlotId implements Serializable {
+        private long accountId;
+        private int slot;
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.util.Date;
 
 /**
  * A separate blockchain table could be used for the ledger aspects but currently this Journal serves multiple purposes:
@@ -12,13 +15,18 @@ import jakarta.persistence.*;
  *  - Store for LRA state
  */
 @Entity
-@Table(name = "JOURNAL")
+@Table(name = "JOURNAL", indexes = {
+        @Index(name = "JOURNAL_LRA_ID_TYPE_IDX", columnList = "LRA_ID, JOURNAL_TYPE"),
+        @Index(name = "JOURNAL_ACCOUNT_ID_IDX", columnList = "ACCOUNT_ID, JOURNAL_ID"),
+        @Index(name = "JOURNAL_CREATED_IDX", columnList = "JOURNAL_CREATED"),
+        @Index(name = "JOURNAL_LRA_STATE_IDX", columnList = "LRA_STATE, JOURNAL_ID")})
 @Data
 @NoArgsConstructor
 public class Journal  {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "JOURNAL_SEQ")
+    @SequenceGenerator(name = "JOURNAL_SEQ", sequenceName = "JOURNAL_SEQ", allocationSize = 50)
     @Column(name = "JOURNAL_ID")
     private long journalId;
 
@@ -40,6 +48,14 @@ public class Journal  {
     @Column(name = "JOURNAL_AMOUNT")
     private long journalAmount;
 
+    /**
+     * When the entry was written. Entries of ended LRAs are moved to JOURNAL_ARCHIVE once this is older
+     * than the retention window.
+     */
+    @CreationTimestamp
+    @Column(name = "JOURNAL_CREATED", updatable = false)
+    private Date journalCreated;
+
     public Journal(String journalType, long accountId, long journalAmount, String lraId, String lraState) {
         this.journalType = journalType;
         this.accountId = accountId;
@@ -0,0 +1,56 @@
+package oracle.examples.cloudbank.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * Journal entries of ended LRAs, moved out of JOURNAL by the JournalArchiver after the retention window.
+ * Kept for auditing; the live saga path only reads it for callbacks about LRAs that have already been archived.
+ */
+@Entity
+@Table(name = "JOURNAL_ARCHIVE", indexes = {
+        @Index(name = "JOURNAL_ARCHIVE_LRA_ID_IDX", columnList = "LRA_ID"),
+        @Index(name = "JOURNAL_ARCHIVE_ACCOUNT_ID_IDX", columnList = "ACCOUNT_ID")})
+@Data
+@NoArgsConstructor
+public class JournalArchive {
+
+    @Id
+    @Column(name = "JOURNAL_ID")
+    private long journalId;
+
+    @Column(name = "JOURNAL_TYPE")
+    private String journalType;
+
+    @Column(name = "ACCOUNT_ID")
+    private long accountId;
+
+    @Column(name = "LRA_ID")
+    private String lraId;
+
+    @Column(name = "LRA_STATE")
+    private String lraState;
+
+    @Column(name = "JOURNAL_AMOUNT")
+    private long journalAmount;
+
+    @Column(name = "JOURNAL_CREATED")
+    private Date journalCreated;
+
+    @Column(name = "JOURNAL_ARCHIVED")
+    private Date journalArchived;
+
+    public Journal toJournal() {
+        Journal journal = new Journal(journalType, accountId, journalAmount, lraId, lraState);
+        journal.setJournalId(journalId);
+        journal.setJournalCreated(journalCreated);
+        return journal;
+    }
+}
@@ -0,0 +1,46 @@
+package oracle.examples.cloudbank.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A balance change in ledger mode: the amount credited (positive) or debited (negative) by a journal entry.
+ * The balance of an account is ACCOUNTS.ACCOUNT_BALANCE (the snapshot) plus its slots plus its ledger entries;
+ * the compactor periodically adds the entries to the snapshot and deletes them.
+ */
+@Entity
+@Table(name = "ACCOUNT_LEDGER", indexes = {
+        @Index(name = "ACCOUNT_LEDGER_ACCOUNT_ID_IDX", columnList = "ACCOUNT_ID, ENTRY_ID")})
+@Data
+@NoArgsConstructor
+public class LedgerEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ACCOUNT_LEDGER_SEQ")
+    @SequenceGenerator(name = "ACCOUNT_LEDGER_SEQ", sequenceName = "ACCOUNT_LEDGER_SEQ", allocationSize = 50)
+    @Column(name = "ENTRY_ID")
+    private long entryId;
+
+    @Column(name = "ACCOUNT_ID")
+    private long accountId;
+
+    @Column(name = "JOURNAL_ID")
+    private long journalId;
+
+    @Column(name = "ENTRY_AMOUNT")
+    private long entryAmount;
+
+    public LedgerEntry(long accountId, long journalId, long entryAmount) {
+        this.accountId = accountId;
+        this.journalId = journalId;
+        this.entryAmount = entryAmount;
+    }
+}
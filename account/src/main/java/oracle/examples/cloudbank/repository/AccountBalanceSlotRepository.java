@@ -0,0 +1,16 @@
+package oracle.examples.cloudbank.repository;
+
+import oracle.examples.cloudbank.model.AccountBalanceSlot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface AccountBalanceSlotRepository extends JpaRepository<AccountBalanceSlot, AccountBalanceSlot.SlotId> {
+
+    /**
+     * ACCOUNTS.ACCOUNT_BALANCE plus the slots, read in one statement so a concurrent fold is never half seen.
+     */
+    @Query("select a.accountBalance + coalesce((select sum(s.slotBalance) from AccountBalanceSlot s " +
+            "where s.accountId = a.accountId), 0) from Account a where a.accountId = :accountId")
+    Long totalBalance(@Param("accountId") long accountId);
+}
@@ -1,6 +1,7 @@
 package oracle.examples.cloudbank.repository;
 
 import oracle.examples.cloudbank.model.Account;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
@@ -8,6 +9,8 @@ import java.util.List;
 public interface AccountRepository extends JpaRepository <Account, Long> {
     List<Account> findAccountsByAccountNameContains (String accountName);
 
+    List<Account> findAccountsByAccountNameContainsIgnoreCase(String accountName, Pageable pageable);
+
     List<Account> findByAccountCustomerId(String customerId);
 
     Account findByAccountId(long accountId);
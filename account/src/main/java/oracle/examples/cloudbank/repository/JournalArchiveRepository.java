@@ -0,0 +1,15 @@
+package oracle.examples.cloudbank.repository;
+
+import oracle.examples.cloudbank.model.JournalArchive;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface JournalArchiveRepository extends JpaRepository<JournalArchive, Long> {
+    JournalArchive findFirstByLraIdAndJournalType(String lraId, String journalType);
+
+    List<JournalArchive> findByLraId(String lraId);
+
+    List<JournalArchive> findByAccountIdOrderByJournalIdDesc(long accountId, Pageable pageable);
+}
@@ -2,10 +2,15 @@ package oracle.examples.cloudbank.services;
 
 import oracle.examples.cloudbank.model.Account;
 import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.model.JournalArchive;
 import oracle.examples.cloudbank.repository.AccountRepository;
+import oracle.examples.cloudbank.repository.JournalArchiveRepository;
 import oracle.examples.cloudbank.repository.JournalRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,7 +19,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -26,18 +33,34 @@ public class AccountAndJournalAdminService {
 
     final AccountRepository accountRepository;
     final JournalRepository journalRepository;
+    final JournalArchiveRepository journalArchiveRepository;
+    final StripedBalances stripedBalances;
+    final AdminQueries adminQueries;
+    final AccountCache accountCache;
+    final AccountNameIndex accountNameIndex;
+    final AccountIdRange accountIdRange;
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    public AccountAndJournalAdminService(AccountRepository accountRepository, JournalRepository journalRepository) {
+    public AccountAndJournalAdminService(AccountRepository accountRepository, JournalRepository journalRepository,
+                                         JournalArchiveRepository journalArchiveRepository,
+                                         StripedBalances stripedBalances, AdminQueries adminQueries,
+                                         AccountCache accountCache, AccountNameIndex accountNameIndex,
+                                         AccountIdRange accountIdRange) {
         this.accountRepository = accountRepository;
         this.journalRepository = journalRepository;
+        this.journalArchiveRepository = journalArchiveRepository;
+        this.stripedBalances = stripedBalances;
+        this.adminQueries = adminQueries;
+        this.accountCache = accountCache;
+        this.accountNameIndex = accountNameIndex;
+        this.accountIdRange = accountIdRange;
     }
 
     // Get Account with specific Account ID
     @GetMapping("/account/{accountId}")
     public ResponseEntity<Account> getAccountById(@PathVariable("accountId") long accountId) {
         log.info("ACCOUNT: getAccountById:" + accountId);
-        Optional<Account> accountData = accountRepository.findById(accountId);
+        Optional<Account> accountData = Optional.ofNullable(accountCache.get(accountId));
         try {
             return accountData.map(account -> new ResponseEntity<>(account, HttpStatus.OK))
                     .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
@@ -51,7 +74,7 @@ public class AccountAndJournalAdminService {
         log.info("ACCOUNT: getAccountsByCustomerId");
         try {
             List<Account> accountData = new ArrayList<Account>();
-            accountData.addAll(accountRepository.findByAccountCustomerId(customerId));
+            accountData.addAll(accountCache.getByCustomerId(customerId));
             if (accountData.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
@@ -60,12 +83,56 @@ public class AccountAndJournalAdminService {
                 return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
             }
     }
+    /**
+     * Accounts of a customer in pages ordered by account id, pass nextAfterId of a page as afterId for the next
+     */
+    @GetMapping("/account/getAccounts/{customerId}/page")
+    public ResponseEntity<AdminQueries.KeysetPage<Account>> getAccountsByCustomerIdPage(
+            @PathVariable("customerId") String customerId,
+            @RequestParam(value = "afterId", defaultValue = "0") long afterId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("ACCOUNT: getAccountsByCustomerIdPage");
+        try {
+            return new ResponseEntity<>(adminQueries.accountPage(customerId, afterId, limit), HttpStatus.OK);
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * All accounts of a customer as NDJSON, written as they are read
+     */
+    @GetMapping(value = "/account/getAccounts/{customerId}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAccountsByCustomerId(@PathVariable("customerId") String customerId) {
+        log.info("ACCOUNT: streamAccountsByCustomerId");
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> adminQueries.streamAccounts(customerId, out));
+    }
+
+    /**
+     * Accounts whose names contain customerName, ignoring case, best matches first. The name has at least
+     * 3 characters, 400 otherwise.
+     */
     @GetMapping("/account/getAccountsByCustomerName/{customerName}")
-    public ResponseEntity<List<Account>> getAccountsByCustomerName(@PathVariable("customerName") String customerName) {
+    public ResponseEntity<List<Account>> getAccountsByCustomerName(@PathVariable("customerName") String customerName,
+                                                                   @RequestParam(value = "limit", defaultValue = "100") int limit) {
         log.info("ACCOUNT: getAccountsByCustomerName:" + customerName);
+        if (customerName.length() < AccountNameIndex.MIN_QUERY_LENGTH) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
         try {
             List<Account> accountData = new ArrayList<Account>();
-            accountData.addAll(accountRepository.findAccountsByAccountNameContains(customerName));
+            if (accountNameIndex.isReady()) {
+                for (long accountId : accountNameIndex.search(customerName, limit)) {
+                    Account account = accountCache.get(accountId);
+                    if (account != null) accountData.add(account);
+                }
+            } else {
+                accountData.addAll(accountRepository.findAccountsByAccountNameContainsIgnoreCase(customerName,
+                        PageRequest.of(0, Math.max(1, Math.min(limit, AccountNameIndex.MAX_RESULTS)))));
+                accountData.forEach(stripedBalances::withSummedBalance);
+            }
             if (accountData.isEmpty()) {
                 return new ResponseEntity<>(HttpStatus.NO_CONTENT);
             }
@@ -79,13 +146,11 @@ public class AccountAndJournalAdminService {
     public ResponseEntity<Account> createAccount(@RequestBody Account account) {
         log.info("ACCOUNT: createAccount");
         try {
-            Account _account = accountRepository.save(new Account(
+            return create(new Account(
                     account.getAccountName(),
                     account.getAccountType(),
                     account.getAccountOtherDetails(),
                     account.getAccountCustomerId()));
-            return new ResponseEntity<>(_account, HttpStatus.CREATED);
-
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -101,18 +166,62 @@ public class AccountAndJournalAdminService {
                     account.getAccountOtherDetails(),
                     account.getAccountCustomerId());
             entity.setAccountBalance(1000);
-            Account _account = accountRepository.save(entity);
-            return new ResponseEntity<>(_account, HttpStatus.CREATED);
+            return create(entity);
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
 
+    /**
+     * Insert the account, or 507 if this shard has used up its account ids and the database refused the insert
+     */
+    private ResponseEntity<Account> create(Account entity) {
+        Account _account;
+        try {
+            _account = accountRepository.save(entity);
+        } catch (DataAccessException e) {
+            if (!accountIdRange.isUsedUp()) throw e;
+            log.warn("ACCOUNT: id range of this shard is used up, account not created");
+            return new ResponseEntity<>(HttpStatus.INSUFFICIENT_STORAGE);
+        }
+        accountCache.invalidateCustomer(_account.getAccountCustomerId());
+        accountNameIndex.put(_account.getAccountId(), _account.getAccountName());
+        return new ResponseEntity<>(_account, HttpStatus.CREATED);
+    }
+    /**
+     * Stripe the balance of a hot account across the given number of slots, 0 to stop striping it.
+     * 400 if the number of slots is out of range, 409 if striping is disabled.
+     */
+    @PostMapping("/account/{accountId}/stripe")
+    public ResponseEntity<Account> stripeAccount(@PathVariable("accountId") long accountId,
+                                                 @RequestParam("slots") int slots) {
+        log.info("ACCOUNT: stripeAccount:" + accountId + " slots:" + slots);
+        try {
+            if (accountRepository.findByAccountId(accountId) == null) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            stripedBalances.setSlots(accountId, slots);
+            accountCache.invalidate(accountId);
+            return new ResponseEntity<>(stripedBalances.withSummedBalance(accountRepository.findByAccountId(accountId)),
+                    HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(null, HttpStatus.CONFLICT);
         } catch (Exception e) {
             return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
+
     @DeleteMapping("/account/{accountId}")
     public ResponseEntity<HttpStatus> deleteAccount(@PathVariable("accountId") long accountId) {
         log.info("ACCOUNT: deleteAccount");
         try {
+            Account account = accountRepository.findByAccountId(accountId);
             accountRepository.deleteById(accountId);
+            accountCache.invalidate(accountId);
+            accountNameIndex.remove(accountId);
+            if (account != null) accountCache.invalidateCustomer(account.getAccountCustomerId());
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
         } catch (Exception e) {
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -134,5 +243,84 @@ public class AccountAndJournalAdminService {
         }
     }
 
+    /**
+     * Journal entries in pages ordered by journal id, pass nextAfterId of a page as afterId for the next.
+     * Optionally filtered by account, LRA, journal type, LRA state and journal id range.
+     */
+    @GetMapping("/journals/page")
+    public ResponseEntity<AdminQueries.KeysetPage<Journal>> getJournalsPage(
+            @RequestParam(value = "afterId", defaultValue = "0") long afterId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "accountId", required = false) Long accountId,
+            @RequestParam(value = "lraId", required = false) String lraId,
+            @RequestParam(value = "journalType", required = false) String journalType,
+            @RequestParam(value = "state", required = false) String state,
+            @RequestParam(value = "minId", required = false) Long minId,
+            @RequestParam(value = "maxId", required = false) Long maxId) {
+        log.info("JOURNAL: getJournalsPage afterId:" + afterId);
+        try {
+            AdminQueries.JournalFilter filter = new AdminQueries.JournalFilter(accountId, lraId, journalType, state,
+                    minId, maxId);
+            return new ResponseEntity<>(adminQueries.journalPage(filter, afterId, limit), HttpStatus.OK);
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Journal entries matching the same filters as /journals/page as NDJSON, written as they are read
+     */
+    @GetMapping(value = "/journals/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamJournals(
+            @RequestParam(value = "accountId", required = false) Long accountId,
+            @RequestParam(value = "lraId", required = false) String lraId,
+            @RequestParam(value = "journalType", required = false) String journalType,
+            @RequestParam(value = "state", required = false) String state,
+            @RequestParam(value = "minId", required = false) Long minId,
+            @RequestParam(value = "maxId", required = false) Long maxId) {
+        log.info("JOURNAL: streamJournals");
+        AdminQueries.JournalFilter filter = new AdminQueries.JournalFilter(accountId, lraId, journalType, state,
+                minId, maxId);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> adminQueries.streamJournals(filter, out));
+    }
+
+    /**
+     * Archived journal entries of an LRA
+     */
+    @GetMapping("/journals/archive")
+    public ResponseEntity<List<JournalArchive>> getArchivedJournalsForLRA(@RequestParam("lraId") String lraId) {
+        log.info("JOURNAL: getArchivedJournalsForLRA:" + lraId);
+        try {
+            List<JournalArchive> journalData = journalArchiveRepository.findByLraId(lraId);
+            if (journalData.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(journalData, HttpStatus.OK);
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * The most recent archived journal entries of an account
+     */
+    @GetMapping("/journals/archive/account/{accountId}")
+    public ResponseEntity<List<JournalArchive>> getArchivedJournalsForAccount(@PathVariable("accountId") long accountId,
+                                                                              @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        log.info("JOURNAL: getArchivedJournalsForAccount:" + accountId);
+        try {
+            List<JournalArchive> journalData = journalArchiveRepository.findByAccountIdOrderByJournalIdDesc(accountId,
+                    PageRequest.of(0, Math.max(1, Math.min(limit, 1000))));
+            if (journalData.isEmpty()) {
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+            return new ResponseEntity<>(journalData, HttpStatus.OK);
+        } catch (Exception e) {
+            return new ResponseEntity<>(null, HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
 }
 
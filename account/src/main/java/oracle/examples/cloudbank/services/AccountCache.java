@@ -0,0 +1,143 @@
+package oracle.examples.cloudbank.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.repository.AccountRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read-through cache of accounts (with striped balances summed) by account id, and of the account ids of
+ * each customer, for the admin API reads that dashboards poll.
+ * Balance changes invalidate the account after they commit: the journal writer for withdraws, deposit
+ * completions and compensations, and the DAO and admin API for other account writes.
+ * A load that overlaps an invalidation of the same key is returned but not cached, so a balance read before
+ * a commit cannot be cached after it. Entries expire after ttl-ms and the least recently used are dropped
+ * beyond max-size.
+ * Like the participant state cache this assumes one account service instance writes the accounts;
+ * set max-size to 0 to disable. Hit and miss counts are published as cache.gets.
+ */
+@Component
+public class AccountCache {
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    record Entry<T>(T value, long loadedAt) {
+    }
+
+    final AccountRepository accountRepository;
+    final StripedBalances stripedBalances;
+    final int maxSize;
+    final long ttlMillis;
+    private final BoundedLruMap<Long, Entry<Account>> accounts;
+    private final BoundedLruMap<String, Entry<List<Long>>> customerAccounts;
+    // bumped by each invalidation of a key that hashes to the stripe
+    private final AtomicLongArray accountGenerations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLongArray customerGenerations = new AtomicLongArray(GENERATION_STRIPES);
+    private final Counter accountHits;
+    private final Counter accountMisses;
+    private final Counter customerHits;
+    private final Counter customerMisses;
+
+    public AccountCache(AccountRepository accountRepository, StripedBalances stripedBalances,
+                        MeterRegistry meterRegistry,
+                        @Value("${account.cache.max-size:10000}") int maxSize,
+                        @Value("${account.cache.ttl-ms:30000}") long ttlMillis) {
+        this.accountRepository = accountRepository;
+        this.stripedBalances = stripedBalances;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.accounts = new BoundedLruMap<>(maxSize);
+        this.customerAccounts = new BoundedLruMap<>(maxSize);
+        accountHits = Counter.builder("cache.gets").tags("cache", "accounts", "result", "hit").register(meterRegistry);
+        accountMisses = Counter.builder("cache.gets").tags("cache", "accounts", "result", "miss").register(meterRegistry);
+        customerHits = Counter.builder("cache.gets").tags("cache", "customerAccounts", "result", "hit").register(meterRegistry);
+        customerMisses = Counter.builder("cache.gets").tags("cache", "customerAccounts", "result", "miss").register(meterRegistry);
+        Gauge.builder("cache.size", accounts, BoundedLruMap::size).tags("cache", "accounts").register(meterRegistry);
+        Gauge.builder("cache.size", customerAccounts, BoundedLruMap::size).tags("cache", "customerAccounts").register(meterRegistry);
+    }
+
+    /**
+     * The account, or null if it does not exist
+     */
+    public Account get(long accountId) {
+        Entry<Account> entry = accounts.get(accountId);
+        if (entry != null && !expired(entry)) {
+            accountHits.increment();
+            return copy(entry.value());
+        }
+        accountMisses.increment();
+        long generation = accountGenerations.get(stripe(accountId));
+        Account account = accountRepository.findByAccountId(accountId);
+        if (account == null) return null;
+        stripedBalances.withSummedBalance(account);
+        if (maxSize > 0 && accountGenerations.get(stripe(accountId)) == generation) {
+            accounts.put(accountId, new Entry<>(copy(account), System.currentTimeMillis()));
+        }
+        return account;
+    }
+
+    public List<Account> getByCustomerId(String customerId) {
+        List<Long> accountIds;
+        Entry<List<Long>> entry = customerAccounts.get(customerId);
+        if (entry != null && !expired(entry)) {
+            customerHits.increment();
+            accountIds = entry.value();
+        } else {
+            customerMisses.increment();
+            long generation = customerGenerations.get(stripe(customerId));
+            List<Account> loaded = accountRepository.findByAccountCustomerId(customerId);
+            accountIds = loaded.stream().map(Account::getAccountId).toList();
+            if (maxSize > 0 && customerGenerations.get(stripe(customerId)) == generation) {
+                customerAccounts.put(customerId, new Entry<>(accountIds, System.currentTimeMillis()));
+            }
+        }
+        List<Account> result = new ArrayList<>(accountIds.size());
+        for (long accountId : accountIds) {
+            Account account = get(accountId);
+            if (account != null) result.add(account);
+        }
+        return result;
+    }
+
+    /**
+     * Call after a change to the account has committed
+     */
+    public void invalidate(long accountId) {
+        accountGenerations.incrementAndGet(stripe(accountId));
+        accounts.remove(accountId);
+    }
+
+    /**
+     * Call after an account of the customer has been created or deleted
+     */
+    public void invalidateCustomer(String customerId) {
+        if (customerId == null) return;
+        customerGenerations.incrementAndGet(stripe(customerId));
+        customerAccounts.remove(customerId);
+    }
+
+    private boolean expired(Entry<?> entry) {
+        return System.currentTimeMillis() - entry.loadedAt() > ttlMillis;
+    }
+
+    private static int stripe(Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private static Account copy(Account account) {
+        Account copy = new Account(account.getAccountName(), account.getAccountType(),
+                account.getAccountOtherDetails(), account.getAccountCustomerId());
+        copy.setAccountId(account.getAccountId());
+        copy.setAccountOpenedDate(account.getAccountOpenedDate());
+        copy.setAccountBalance(account.getAccountBalance());
+        copy.setAccountBalanceSlots(account.getAccountBalanceSlots());
+        return copy;
+    }
+}
@@ -0,0 +1,105 @@
+package oracle.examples.cloudbank.services;
+
+import jakarta.annotation.PostConstruct;
+import oracle.examples.cloudbank.repository.AccountRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * The account ids this service hands out when it is one of several account service shards
+ * (account.shard.first-account-id to last-account-id, the range the transfer service's shard map routes here).
+ * The first time a shard starts, the ACCOUNTS identity is moved into the range, with the range end as its
+ * maximum value, so new accounts are created on the shard that transfers for them are routed to. The move is
+ * done once: an identity whose maximum value is already the range end is left alone. On Oracle it starts with
+ * LIMIT VALUE when the range has ids, which the database takes above the highest id with the table locked,
+ * so an account created meanwhile by another instance of the shard is not given its id again.
+ * Once the range is used up the database refuses to insert, no account is created, and the shard map needs a
+ * new shard for the ids that follow.
+ * With first-account-id 0 (the default) there is a single shard and ids are left as they are.
+ */
+@Component
+public class AccountIdRange {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final String MAX_ID_SQL = "SELECT MAX(ACCOUNT_ID) FROM ACCOUNTS WHERE ACCOUNT_ID BETWEEN ? AND ?";
+    private static final String ORACLE_IDENTITY_MAX_SQL = "SELECT s.MAX_VALUE FROM USER_TAB_IDENTITY_COLS c " +
+            "JOIN USER_SEQUENCES s ON s.SEQUENCE_NAME = c.SEQUENCE_NAME " +
+            "WHERE c.TABLE_NAME = 'ACCOUNTS' AND c.COLUMN_NAME = 'ACCOUNT_ID'";
+    private static final String IDENTITY_MAX_SQL = "SELECT IDENTITY_MAXIMUM FROM INFORMATION_SCHEMA.COLUMNS " +
+            "WHERE TABLE_NAME = 'ACCOUNTS' AND COLUMN_NAME = 'ACCOUNT_ID'";
+
+    final JdbcTemplate jdbcTemplate;
+    final long firstAccountId;
+    final long lastAccountId;
+
+    // the repository is only injected so that the schema exists before the identity is moved
+    public AccountIdRange(JdbcTemplate jdbcTemplate, AccountRepository accountRepository,
+                          @Value("${account.shard.first-account-id:0}") long firstAccountId,
+                          @Value("${account.shard.last-account-id:" + Long.MAX_VALUE + "}") long lastAccountId) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.firstAccountId = firstAccountId;
+        this.lastAccountId = lastAccountId;
+    }
+
+    public boolean isSharded() {
+        return firstAccountId > 0;
+    }
+
+    public boolean contains(long accountId) {
+        return !isSharded() || (accountId >= firstAccountId && accountId <= lastAccountId);
+    }
+
+    /**
+     * Whether the last id of the range has been handed out, so that no more accounts can be created here
+     */
+    public boolean isUsedUp() {
+        return isSharded() && Long.valueOf(lastAccountId).equals(maxIdInRange());
+    }
+
+    @PostConstruct
+    void moveIdentity() {
+        if (!isSharded()) return;
+        boolean oracle = true;
+        Long identityMax;
+        try {
+            identityMax = jdbcTemplate.queryForObject(ORACLE_IDENTITY_MAX_SQL, Long.class);
+        } catch (DataAccessException e) {
+            // not Oracle, the standard information schema
+            oracle = false;
+            identityMax = jdbcTemplate.queryForObject(IDENTITY_MAX_SQL, Long.class);
+        }
+        if (identityMax != null && identityMax == lastAccountId) {
+            log.info("account shard " + firstAccountId + "-" + lastAccountId + ", identity already in the range");
+            return;
+        }
+        if (oracle) {
+            if (maxIdInRange() == null) {
+                alterIdentity("START WITH " + firstAccountId);
+                // another instance of the shard may have moved the identity and created accounts meanwhile
+                if (maxIdInRange() != null) alterIdentity("START WITH LIMIT VALUE");
+            } else {
+                alterIdentity("START WITH LIMIT VALUE");
+            }
+        } else {
+            // H2 for local runs has no START WITH LIMIT VALUE
+            Long maxId = maxIdInRange();
+            jdbcTemplate.execute("ALTER TABLE ACCOUNTS ALTER COLUMN ACCOUNT_ID RESTART WITH " +
+                    (maxId == null ? firstAccountId : maxId + 1));
+            jdbcTemplate.execute("ALTER TABLE ACCOUNTS ALTER COLUMN ACCOUNT_ID SET MAXVALUE " + lastAccountId);
+        }
+        log.info("account shard " + firstAccountId + "-" + lastAccountId + ", identity moved into the range");
+    }
+
+    private void alterIdentity(String start) {
+        jdbcTemplate.execute("ALTER TABLE ACCOUNTS MODIFY ACCOUNT_ID GENERATED AS IDENTITY (" + start +
+                " MAXVALUE " + lastAccountId + ")");
+    }
+
+    private Long maxIdInRange() {
+        return jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class, firstAccountId, lastAccountId);
+    }
+}
@@ -0,0 +1,143 @@
+package oracle.examples.cloudbank.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ledger mode (account.ledger.enabled): balance changes are appended to ACCOUNT_LEDGER instead of updating
+ * the ACCOUNTS row, so concurrent transfers on the same account do not wait on its row lock.
+ * The balance is the ACCOUNTS row (the snapshot) plus the slots plus the ledger entries, read in one statement.
+ * Withdraws are checked against that balance by the journal writer after it has locked the ACCOUNTS rows of the
+ * accounts it debits, so two writers (or two account service replicas) debiting the same account take turns and
+ * the second sees the entries of the first. Credits take no lock, a credit that is not committed yet only makes
+ * the balance look lower. The caches still assume one account service instance.
+ * The compactor folds the entries of accounts with at least compact-min-entries into the snapshot, one short
+ * transaction per account. With ledger mode off any entries left are folded at startup.
+ */
+@Component
+public class AccountLedger {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final String BALANCE_SQL = "SELECT a.ACCOUNT_ID, a.ACCOUNT_BALANCE " +
+            "+ COALESCE((SELECT SUM(s.SLOT_BALANCE) FROM ACCOUNT_BALANCE_SLOTS s WHERE s.ACCOUNT_ID = a.ACCOUNT_ID), 0) " +
+            "+ COALESCE((SELECT SUM(l.ENTRY_AMOUNT) FROM ACCOUNT_LEDGER l WHERE l.ACCOUNT_ID = a.ACCOUNT_ID), 0) " +
+            "FROM ACCOUNTS a WHERE a.ACCOUNT_ID IN (:accountIds)";
+    private static final String LOCK_SQL = "SELECT ACCOUNT_ID FROM ACCOUNTS WHERE ACCOUNT_ID IN (:accountIds) " +
+            "ORDER BY ACCOUNT_ID FOR UPDATE";
+    private static final String COMPACT_SQL = "SELECT ACCOUNT_ID FROM ACCOUNT_LEDGER GROUP BY ACCOUNT_ID " +
+            "HAVING COUNT(*) >= :minEntries";
+    private static final String ENTRIES_SQL = "SELECT ENTRY_ID, ENTRY_AMOUNT FROM ACCOUNT_LEDGER WHERE ACCOUNT_ID = :accountId";
+
+    final NamedParameterJdbcTemplate jdbcTemplate;
+    final NamedParameterJdbcTemplate limitedTemplate;
+    final TransactionTemplate transactionTemplate;
+    final boolean enabled;
+    final int compactMinEntries;
+
+    public AccountLedger(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${account.ledger.enabled:false}") boolean enabled,
+                         @Value("${account.ledger.compact-min-entries:100}") int compactMinEntries,
+                         @Value("${account.ledger.compact-batch-size:1000}") int compactBatchSize) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        JdbcTemplate limited = new JdbcTemplate(jdbcTemplate.getDataSource());
+        limited.setMaxRows(compactBatchSize);
+        limited.setFetchSize(compactBatchSize);
+        this.limitedTemplate = new NamedParameterJdbcTemplate(limited);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.compactMinEntries = compactMinEntries;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    void foldLeftoverEntries() {
+        if (enabled) return;
+        long folded = compact(1);
+        if (folded > 0) log.info("ledger mode is off, folded " + folded + " ledger entries into ACCOUNTS");
+    }
+
+    /**
+     * The balances of the accounts that exist, on the caller's transaction
+     */
+    public Map<Long, Long> balances(Collection<Long> accountIds) {
+        Map<Long, Long> balances = new HashMap<>();
+        if (accountIds.isEmpty()) return balances;
+        jdbcTemplate.query(BALANCE_SQL, new MapSqlParameterSource("accountIds", accountIds), rs -> {
+            balances.put(rs.getLong(1), rs.getLong(2));
+        });
+        return balances;
+    }
+
+    /**
+     * Lock the ACCOUNTS rows of accounts about to be debited, on the caller's transaction, in account id order so
+     * that writers locking overlapping accounts do not deadlock. The compactor's fold takes the same lock.
+     */
+    public void lockForDebit(Collection<Long> accountIds) {
+        if (accountIds.isEmpty()) return;
+        jdbcTemplate.queryForList(LOCK_SQL, new MapSqlParameterSource("accountIds", accountIds), Long.class);
+    }
+
+    /**
+     * The balance of the account, null if it does not exist
+     */
+    public Long balance(long accountId) {
+        return balances(List.of(accountId)).get(accountId);
+    }
+
+    @Scheduled(fixedDelayString = "${account.ledger.compact-interval-ms:10000}")
+    public void compact() {
+        if (!enabled) return;
+        long folded = compact(compactMinEntries);
+        if (folded > 0) log.debug("folded " + folded + " ledger entries");
+    }
+
+    private long compact(int minEntries) {
+        long folded = 0;
+        for (Long accountId : limitedTemplate.queryForList(COMPACT_SQL,
+                new MapSqlParameterSource("minEntries", minEntries), Long.class)) {
+            folded += fold(accountId);
+        }
+        return folded;
+    }
+
+    /**
+     * Add up to compact-batch-size entries of the account to its ACCOUNTS row and delete them, in one transaction.
+     * Only the entries read are deleted, so an entry committed meanwhile is left for the next run. The row is
+     * locked before the entries are read, so that the compactor of another replica cannot fold the same entries.
+     */
+    int fold(long accountId) {
+        Integer folded = transactionTemplate.execute(txStatus -> {
+            lockForDebit(List.of(accountId));
+            List<Long> entryIds = new ArrayList<>();
+            long[] total = {0};
+            limitedTemplate.query(ENTRIES_SQL, new MapSqlParameterSource("accountId", accountId), rs -> {
+                entryIds.add(rs.getLong(1));
+                total[0] += rs.getLong(2);
+            });
+            if (entryIds.isEmpty()) return 0;
+            jdbcTemplate.update("UPDATE ACCOUNTS SET ACCOUNT_BALANCE = ACCOUNT_BALANCE + :total WHERE ACCOUNT_ID = :accountId",
+                    new MapSqlParameterSource("total", total[0]).addValue("accountId", accountId));
+            return jdbcTemplate.update("DELETE FROM ACCOUNT_LEDGER WHERE ENTRY_ID IN (:entryIds)",
+                    new MapSqlParameterSource("entryIds", entryIds));
+        });
+        return folded == null ? 0 : folded;
+    }
+}
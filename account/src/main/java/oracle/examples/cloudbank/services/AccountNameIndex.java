@@ -0,0 +1,231 @@
+package oracle.examples.cloudbank.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index of account names for case-insensitive substring search, replacing the
+ * leading-wildcard LIKE that scans ACCOUNTS.
+ * Each lower-cased name is padded at the end so that every position starts a trigram, and each trigram keeps
+ * a sorted array of the account ids whose names contain it. A query, of at least MIN_QUERY_LENGTH characters,
+ * intersects the postings of its trigrams; candidates are then checked against the name and ranked: exact
+ * match, then prefix, then start of a word, then anywhere, shorter names first. Shorter queries are refused,
+ * as they would match a large part of the accounts through the union of many postings. The index is loaded from ACCOUNTS in the background at startup (search falls back to
+ * the database until then) and is kept up to date by account create, save and delete on this instance.
+ */
+@Component
+public class AccountNameIndex {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final int GRAM = 3;
+    private static final char PAD = '\u0000';
+    static final int MAX_RESULTS = 1000;
+    static final int MIN_QUERY_LENGTH = GRAM;
+
+    /**
+     * Growable sorted array of account ids
+     */
+    private static class Postings {
+        long[] ids = new long[4];
+        int size;
+
+        void add(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) return;
+            i = -i - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        void remove(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0) return;
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            size--;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    private record Match(long accountId, int rank, int length) {
+    }
+
+    private static final Comparator<Match> BEST_FIRST = Comparator.comparingInt(Match::rank)
+            .thenComparingInt(Match::length).thenComparingLong(Match::accountId);
+
+    final JdbcTemplate jdbcTemplate;
+    final boolean enabled;
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Long, String> names = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    public AccountNameIndex(JdbcTemplate jdbcTemplate,
+                            @Value("${account.search.enabled:true}") boolean enabled,
+                            @Value("${account.query.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) return;
+        Thread loader = new Thread(this::load, "account-name-index-load");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    private void load() {
+        long start = System.currentTimeMillis();
+        try {
+            jdbcTemplate.query("SELECT ACCOUNT_ID, ACCOUNT_NAME FROM ACCOUNTS", rs -> {
+                put(rs.getLong(1), rs.getString(2));
+            });
+            ready = true;
+            log.info("indexed " + size() + " account names in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            log.warn("loading the account name index failed, searching the database instead", e);
+        }
+    }
+
+    /**
+     * False until the index has been loaded, callers should search the database until then
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index the account under its current name, replacing any previous name
+     */
+    public void put(long accountId, String accountName) {
+        if (!enabled) return;
+        String name = accountName == null ? "" : accountName.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            String previous = names.put(accountId, name);
+            if (name.equals(previous)) return;
+            if (previous != null) removeGrams(accountId, previous);
+            for (String gram : grams(name, true)) {
+                postings.computeIfAbsent(gram, g -> new Postings()).add(accountId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long accountId) {
+        if (!enabled) return;
+        lock.writeLock().lock();
+        try {
+            String previous = names.remove(accountId);
+            if (previous != null) removeGrams(accountId, previous);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of up to limit accounts whose names contain the query, ignoring case, best matches first.
+     * The query has at least MIN_QUERY_LENGTH characters.
+     */
+    public List<Long> search(String query, int limit) {
+        if (query.length() < MIN_QUERY_LENGTH)
+            throw new IllegalArgumentException("search for at least " + MIN_QUERY_LENGTH + " characters");
+        String q = query.toLowerCase(Locale.ROOT);
+        int max = Math.max(1, Math.min(limit, MAX_RESULTS));
+        PriorityQueue<Match> best = new PriorityQueue<>(max + 1, BEST_FIRST.reversed());
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            for (String gram : grams(q, false)) {
+                Postings list = postings.get(gram);
+                if (list == null) return List.of();
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            Postings smallest = lists.get(0);
+            candidates:
+            for (int i = 0; i < smallest.size; i++) {
+                long accountId = smallest.ids[i];
+                for (int j = 1; j < lists.size(); j++) {
+                    if (!lists.get(j).contains(accountId)) continue candidates;
+                }
+                offer(best, max, accountId, q);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Match> matches = new ArrayList<>(best);
+        matches.sort(BEST_FIRST);
+        return matches.stream().map(Match::accountId).toList();
+    }
+
+    private void offer(PriorityQueue<Match> best, int max, long accountId, String q) {
+        String name = names.get(accountId);
+        int at = name == null ? -1 : name.indexOf(q);
+        if (at < 0) return;
+        int rank;
+        if (at == 0) rank = name.length() == q.length() ? 0 : 1;
+        else if (wordStart(name, q, at)) rank = 2;
+        else rank = 3;
+        best.add(new Match(accountId, rank, name.length()));
+        if (best.size() > max) best.poll();
+    }
+
+    private static boolean wordStart(String name, String q, int at) {
+        for (; at > 0; at = name.indexOf(q, at + 1)) {
+            if (!Character.isLetterOrDigit(name.charAt(at - 1))) return true;
+        }
+        return false;
+    }
+
+    private void removeGrams(long accountId, String name) {
+        for (String gram : grams(name, true)) {
+            Postings list = postings.get(gram);
+            if (list == null) continue;
+            list.remove(accountId);
+            if (list.size == 0) postings.remove(gram);
+        }
+    }
+
+    private static Set<String> grams(String s, boolean pad) {
+        String padded = pad ? s + String.valueOf(PAD).repeat(GRAM - 1) : s;
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
@@ -2,7 +2,9 @@ package oracle.examples.cloudbank.services;
 
 import oracle.examples.cloudbank.model.Account;
 import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.model.JournalArchive;
 import oracle.examples.cloudbank.repository.AccountRepository;
+import oracle.examples.cloudbank.repository.JournalArchiveRepository;
 import oracle.examples.cloudbank.repository.JournalRepository;
 import com.oracle.microtx.springboot.lra.annotation.LRAStatus;
 import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
@@ -11,6 +13,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 
 @Component
 public class AccountTransferDAO {
@@ -19,9 +23,25 @@ public class AccountTransferDAO {
     private static AccountTransferDAO singleton;
     final AccountRepository accountRepository;
     final JournalRepository journalRepository;
-    public AccountTransferDAO(AccountRepository accountRepository, JournalRepository journalRepository) {
+    final JournalArchiveRepository journalArchiveRepository;
+    final JournalWriter journalWriter;
+    final ParticipantStateCache participantStateCache;
+    final AccountCache accountCache;
+    final AccountNameIndex accountNameIndex;
+    final SagaMetrics sagaMetrics;
+    public AccountTransferDAO(AccountRepository accountRepository, JournalRepository journalRepository,
+                              JournalArchiveRepository journalArchiveRepository,
+                              JournalWriter journalWriter, ParticipantStateCache participantStateCache,
+                              AccountCache accountCache, AccountNameIndex accountNameIndex,
+                              SagaMetrics sagaMetrics) {
         this.accountRepository = accountRepository;
         this.journalRepository = journalRepository;
+        this.journalArchiveRepository = journalArchiveRepository;
+        this.journalWriter = journalWriter;
+        this.participantStateCache = participantStateCache;
+        this.accountCache = accountCache;
+        this.accountNameIndex = accountNameIndex;
+        this.sagaMetrics = sagaMetrics;
         singleton = this;
     }
 
@@ -95,21 +115,85 @@ public class AccountTransferDAO {
     }
 
     public void saveAccount(Account account) {
-        log.info("saveAccount account" + account.getAccountId() + " account" + account.getAccountBalance());
+        log.debug("saveAccount account {} balance {}", account.getAccountId(), account.getAccountBalance());
         accountRepository.save(account);
+        accountCache.invalidate(account.getAccountId());
+        accountNameIndex.put(account.getAccountId(), account.getAccountName());
+    }
+
+    /**
+     * Debit the account and insert the journal entry in one local transaction.
+     * If the debit fails (no such account or insufficient funds) the journal entry is still written, with a 0 amount.
+     */
+    public boolean debitAccountAndSaveJournal(Journal journal) {
+        boolean debited = journalWriter.debitAndInsert(journal);
+        participantStateCache.put(journal);
+        return debited;
+    }
+
+    /**
+     * Credit the account with the journal amount and update the journal state in one local transaction.
+     * Used for deposit completion and withdraw compensation.
+     * A 0 amount journal (a withdraw or deposit that failed) has nothing to credit and always succeeds.
+     * If the entry has already ended (a repeated or concurrent callback) nothing is credited and the journal is
+     * given its stored state.
+     */
+    public boolean creditAccountAndSaveJournal(Journal journal, ParticipantStatus successStatus,
+                                               ParticipantStatus failureStatus) {
+        boolean credited = journalWriter.creditAndUpdateState(journal, successStatus, failureStatus);
+        participantStateCache.put(journal);
+        return credited;
+    }
+
+    /**
+     * Move the amount from the withdraw journal's account to the deposit journal's account and insert both
+     * journal entries in one local transaction, false (and nothing written) if either side fails.
+     * Not an LRA participant, so the entries are not cached.
+     */
+    public boolean transferAndSaveJournals(Journal withdraw, Journal deposit) {
+        return journalWriter.transfer(withdraw, deposit);
     }
 
+    /**
+     * creditAccountAndSaveJournal for each journal, written together
+     */
+    public void creditAccountsAndSaveJournals(List<Journal> journals, ParticipantStatus successStatus,
+                                              ParticipantStatus failureStatus) {
+        journalWriter.creditAndUpdateStates(journals, successStatus, failureStatus);
+        journals.forEach(participantStateCache::put);
+    }
+
+    /**
+     * The final state of the participant if it has ended, otherwise null.
+     * Coordinator retries of complete, compensate and status for an ended participant are answered from memory;
+     * otherwise the journal entry is read (and cached for the call that follows).
+     */
+    public ParticipantStatus endedState(String lraId, String journalType) throws Exception {
+        long start = System.nanoTime();
+        ParticipantStatus status = participantStateCache.getEnded(lraId, journalType);
+        if (status != null) {
+            sagaMetrics.recordQuery(start, "endedState", "cache");
+            return status;
+        }
+        status = getStatusFromString(getJournalForLRAid(lraId, journalType).getLraState());
+        return ParticipantStateCache.isEnded(status) ? status : null;
+    }
+
+    /**
+     * The state of the participant, including Compensating while a queued compensation has not finished
+     */
     public ResponseEntity<?> status(String lraId, String journalType) throws Exception {
-        Journal journal = getJournalForLRAid(lraId, journalType);
-        if (AccountTransferDAO.getStatusFromString(journal.getLraState()).equals(ParticipantStatus.Compensated))
-            return ResponseEntity.ok(ParticipantStatus.Compensated);
-        else return ResponseEntity.ok(ParticipantStatus.Completed);
+        ParticipantStatus ended = endedState(lraId, journalType);
+        if (ended != null) return ResponseEntity.ok(ended);
+        ParticipantStatus status = getStatusFromString(getJournalForLRAid(lraId, journalType).getLraState());
+        return ResponseEntity.ok(status == null ? ParticipantStatus.Completed : status);
     }
 
     public void afterLRA(String lraId, LRAStatus status, String journalType) throws Exception {
         //In the case of successful ending status of the LRA, we could purge the journal of the LRA here by doing...
         //if (isLRASuccessfullyEnded(status)) journalRepository.delete(getJournalForLRAid(lraId, journalType));
         //However, we keep the entry for analysis/auditing after the fact.
+        participantStateCache.evict(lraId, journalType);
     }
 
     Account getAccountForJournal(Journal journal) throws Exception {
@@ -118,22 +202,45 @@ public class AccountTransferDAO {
         return account;
     }
      Account getAccountForAccountId(long accountId)  {
+         long start = System.nanoTime();
          Account account = accountRepository.findByAccountId(accountId);
+         sagaMetrics.recordQuery(start, "accountById", "database");
          if (account == null) return null;
          return account;
     }
 
      Journal getJournalForLRAid(String lraId, String journalType) throws Exception {
-        Journal journal = journalRepository.findJournalByLraIdAndJournalType(lraId, journalType);
+        long start = System.nanoTime();
+        Journal journal = participantStateCache.get(lraId, journalType);
+        if (journal != null) {
+            sagaMetrics.recordQuery(start, "journalByLraId", "cache");
+            return journal;
+        }
+        journal = journalRepository.findJournalByLraIdAndJournalType(lraId, journalType);
+        sagaMetrics.recordQuery(start, "journalByLraId", "database");
         if (journal == null) {
+            // a late or repeated callback for an LRA whose entries have already been archived
+            JournalArchive archived = journalArchiveRepository.findFirstByLraIdAndJournalType(lraId, journalType);
+            if (archived != null) {
+                journal = archived.toJournal();
+                participantStateCache.put(journal);
+                return journal;
+            }
+
             journalRepository.save(new Journal("unknown", -1, 0, lraId,
                     AccountTransferDAO.getStatusString(ParticipantStatus.FailedToComplete)));
             throw new Exception("Journal entry does not exist for lraId:" + lraId);
         }
+        participantStateCache.put(journal);
         return journal;
     }
 
+    /**
+     * Inserts a new journal entry, or updates the LRA state of an existing one.
+     */
     public void saveJournal(Journal journal) {
-        journalRepository.save(journal);
+        if (journal.getJournalId() == 0) journalWriter.insert(journal);
+        else journalWriter.updateState(journal);
+        participantStateCache.put(journal);
     }
 }
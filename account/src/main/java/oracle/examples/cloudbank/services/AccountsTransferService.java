@@ -0,0 +1,44 @@
+package oracle.examples.cloudbank.services;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.model.Journal;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import static oracle.examples.cloudbank.services.AccountsDepositService.DEPOSIT;
+import static oracle.examples.cloudbank.services.AccountsWithdrawService.WITHDRAW;
+
+/**
+ * Transfer between two accounts of this service without a saga, for the transfer service when both accounts are
+ * on the same shard. The debit, the credit and a Completed withdraw and deposit journal entry (with the transfer
+ * id in place of an LRA id) are written in one local transaction, or nothing is.
+ * The response is what the withdraw and deposit of the saga would have returned together.
+ */
+@RestController
+@RequestMapping("/transfer")
+public class AccountsTransferService {
+    public static final String TRANSFER = "TRANSFER";
+
+    @RequestMapping(value = "/transfer", method = RequestMethod.POST)
+    public ResponseEntity<?> transfer(@RequestParam("transferId") String transferId,
+                                      @RequestParam("fromAccount") long fromAccount,
+                                      @RequestParam("toAccount") long toAccount,
+                                      @RequestParam("amount") long amount) throws Exception {
+        return SagaMetrics.instance().timeParticipantCall("transfer", TRANSFER, transferId, fromAccount, amount, () -> {
+            String completed = AccountTransferDAO.getStatusString(ParticipantStatus.Completed);
+            if (AccountTransferDAO.instance().transferAndSaveJournals(
+                    new Journal(WITHDRAW, fromAccount, amount, transferId, completed),
+                    new Journal(DEPOSIT, toAccount, amount, transferId, completed))) {
+                return ResponseEntity.ok("withdraw succeeded deposit succeeded");
+            }
+            // only look the accounts up to report why the transfer failed
+            if (AccountTransferDAO.instance().getAccountForAccountId(fromAccount) == null) {
+                return ResponseEntity.ok("withdraw failed: account does not exist");
+            }
+            if (AccountTransferDAO.instance().getAccountForAccountId(toAccount) == null) {
+                return ResponseEntity.ok("withdraw succeeded deposit failed: account does not exist");
+            }
+            return ResponseEntity.ok("withdraw failed: insufficient funds");
+        });
+    }
+}
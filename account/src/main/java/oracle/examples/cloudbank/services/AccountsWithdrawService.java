@@ -1,21 +1,16 @@
 package oracle.examples.cloudbank.services;
 
-import oracle.examples.cloudbank.model.Account;
 import oracle.examples.cloudbank.model.Journal;
 import com.oracle.microtx.springboot.lra.annotation.*;
 import com.oracle.microtx.springboot.lra.annotation.LRA;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.logging.Logger;
-
 import static com.oracle.microtx.springboot.lra.annotation.LRA.*;
 
 @RestController
 @RequestMapping("/withdraw")
 public class AccountsWithdrawService {
-    private static final Logger log = Logger.getLogger(AccountsWithdrawService.class.getName());
     public static final String WITHDRAW = "WITHDRAW";
 
     /**
@@ -25,87 +20,82 @@ public class AccountsWithdrawService {
     @LRA(value = LRA.Type.MANDATORY, end = false)
     public ResponseEntity<?> withdraw(@RequestHeader(LRA_HTTP_CONTEXT_HEADER) String lraId,
                             @RequestParam("accountId") long accountId,
-                            @RequestParam("amount") long withdrawAmount)  {
-        log.info("withdraw " + withdrawAmount + " in account:" + accountId + " (lraId:" + lraId + ")...");
-        Account account = AccountTransferDAO.instance().getAccountForAccountId(accountId);
-        if (account==null) {
-            log.info("withdraw failed: account does not exist"); //could also do leave here
-            AccountTransferDAO.instance().saveJournal(new Journal(WITHDRAW, accountId, 0, lraId,
-                    AccountTransferDAO.getStatusString(ParticipantStatus.Active)));
-            return ResponseEntity.ok("withdraw failed: account does not exist");
-        }
-        if (account.getAccountBalance() < withdrawAmount) {
-            log.info("withdraw failed: insufficient funds");
-            AccountTransferDAO.instance().saveJournal(new Journal(WITHDRAW, accountId, 0, lraId,
-                    AccountTransferDAO.getStatusString(ParticipantStatus.Active)));
+                            @RequestParam("amount") long withdrawAmount) throws Exception {
+        return SagaMetrics.instance().timeParticipantCall("withdraw", WITHDRAW, lraId, accountId, withdrawAmount, () -> {
+            if (AccountTransferDAO.instance().debitAccountAndSaveJournal(new Journal(WITHDRAW, accountId, withdrawAmount, lraId,
+                    AccountTransferDAO.getStatusString(ParticipantStatus.Active)))) {
+                return ResponseEntity.ok("withdraw succeeded");
+            }
+            // only look the account up to report why the debit failed
+            if (AccountTransferDAO.instance().getAccountForAccountId(accountId) == null) {
+                return ResponseEntity.ok("withdraw failed: account does not exist");
+            }
             return ResponseEntity.ok("withdraw failed: insufficient funds");
-        }
-        log.info("withdraw current balance:" + account.getAccountBalance() +
-                " new balance:" + (account.getAccountBalance() - withdrawAmount));
-        updateAccountBalance(lraId, accountId, withdrawAmount, account);
-        return ResponseEntity.ok("withdraw succeeded");
-    }
-
-
-    @Transactional
-    private void updateAccountBalance(String lraId, long accountId, long withdrawAmount, Account account) {
-        account.setAccountBalance(account.getAccountBalance() - withdrawAmount);
-        AccountTransferDAO.instance().saveAccount(account);
-        AccountTransferDAO.instance().saveJournal(new Journal(WITHDRAW, accountId, withdrawAmount, lraId,
-                AccountTransferDAO.getStatusString(ParticipantStatus.Active)));
+        });
     }
 
     /**
      * Update LRA state. Do nothing else.
+     * A repeated call for a participant that has already ended returns its final state without a write, as does
+     * a call that finds the entry ended meanwhile (compensated by a concurrent callback).
      */
     @RequestMapping(value = "/complete", method = RequestMethod.PUT)
     @Complete
     public ResponseEntity<?> completeWork(@RequestHeader(LRA_HTTP_CONTEXT_HEADER) String lraId) throws Exception {
-        log.info("withdraw complete called for LRA : " + lraId);
-        Journal journal = AccountTransferDAO.instance().getJournalForLRAid(lraId, WITHDRAW);
-        if (journal != null) {
-            journal.setLraState(AccountTransferDAO.getStatusString(ParticipantStatus.Completed));
-        } else journal.setLraState(AccountTransferDAO.getStatusString(ParticipantStatus.FailedToComplete));
-        AccountTransferDAO.instance().saveJournal(journal);
-        return ResponseEntity.ok(ParticipantStatus.Completed.name());
+        return SagaMetrics.instance().timeParticipantCall("completeWork", WITHDRAW, lraId, () -> {
+            ParticipantStatus ended = AccountTransferDAO.instance().endedState(lraId, WITHDRAW);
+            if (ended != null) return ResponseEntity.ok(ended.name());
+            Journal journal = AccountTransferDAO.instance().getJournalForLRAid(lraId, WITHDRAW);
+            if (journal != null) {
+                journal.setLraState(AccountTransferDAO.getStatusString(ParticipantStatus.Completed));
+            } else journal.setLraState(AccountTransferDAO.getStatusString(ParticipantStatus.FailedToComplete));
+            AccountTransferDAO.instance().saveJournal(journal);
+            return ResponseEntity.ok(AccountTransferDAO.getStatusFromString(journal.getLraState()).name());
+        });
     }
 
     /**
-     * Read the journal and increase the balance by the previous withdraw amount before the LRA
+     * Read the journal and increase the balance by the previous withdraw amount before the LRA.
+     * The credit only happens if the participant has not ended, so repeated calls do not credit twice.
+     * With the compensation queue enabled the journal is set to Compensating and the credit is queued, and the
+     * call returns 202 Compensating; if the queue is full the credit is done here.
      */
     @RequestMapping(value = "/compensate", method = RequestMethod.PUT)
     @Compensate
     public ResponseEntity<?> compensateWork(@RequestHeader(LRA_HTTP_CONTEXT_HEADER) String lraId) throws Exception {
-        log.info("Account withdraw compensate() called for LRA : " + lraId);
-        Journal journal = AccountTransferDAO.instance().getJournalForLRAid(lraId, WITHDRAW);
-        String lraState = journal.getLraState();
-        if(lraState.equals(ParticipantStatus.Compensating) ||
-                lraState.equals(ParticipantStatus.Compensated))
-            return ResponseEntity.ok(AccountTransferDAO.getStatusFromString(lraState));
-        journal.setLraState(AccountTransferDAO.getStatusString(ParticipantStatus.Compensating));
-        AccountTransferDAO.instance().saveJournal(journal);
-        doCompensationWork(journal);
-        return ResponseEntity.ok(ParticipantStatus.Compensated.name());
-    }
-
-    @Transactional
-    private void doCompensationWork(Journal journal) {
-        Account account = AccountTransferDAO.instance().getAccountForAccountId(journal.getAccountId());
-        if (account != null) {
-            account.setAccountBalance(account.getAccountBalance() + journal.getJournalAmount());
-            AccountTransferDAO.instance().saveAccount(account);
-        } else {
-            journal.setLraState(AccountTransferDAO.getStatusString(ParticipantStatus.FailedToCompensate));
-        }
-        journal.setLraState(AccountTransferDAO.getStatusString(ParticipantStatus.Compensated));
-        AccountTransferDAO.instance().saveJournal(journal);
+        return SagaMetrics.instance().timeParticipantCall("compensateWork", WITHDRAW, lraId, () -> {
+            ParticipantStatus ended = AccountTransferDAO.instance().endedState(lraId, WITHDRAW);
+            if (ended != null) return ResponseEntity.ok(ended.name());
+            Journal journal = AccountTransferDAO.instance().getJournalForLRAid(lraId, WITHDRAW);
+            if (CompensationQueue.instance().isEnabled()) {
+                String compensating = AccountTransferDAO.getStatusString(ParticipantStatus.Compensating);
+                if (!compensating.equals(journal.getLraState())) {
+                    journal.setLraState(compensating);
+                    AccountTransferDAO.instance().saveJournal(journal);
+                    // the entry ended meanwhile and kept its final state
+                    if (!compensating.equals(journal.getLraState()))
+                        return ResponseEntity.ok(AccountTransferDAO.getStatusFromString(journal.getLraState()).name());
+                }
+                if (CompensationQueue.instance().submit(journal))
+                    return ResponseEntity.accepted().body(ParticipantStatus.Compensating.name());
+            }
+            AccountTransferDAO.instance().creditAccountAndSaveJournal(journal,
+                    ParticipantStatus.Compensated, ParticipantStatus.FailedToCompensate);
+            return ResponseEntity.ok(AccountTransferDAO.getStatusFromString(journal.getLraState()).name());
+        });
     }
 
+    /**
+     * A Compensating withdraw that is no longer queued (lost to a failure or a restart) is queued again
+     */
     @RequestMapping(value = "/status", method = RequestMethod.GET)
     @Status
     public ResponseEntity<?> status(@RequestHeader(LRA_HTTP_CONTEXT_HEADER) String lraId,
                            @RequestHeader(LRA_HTTP_PARENT_CONTEXT_HEADER) String parentLRA) throws Exception {
-        return AccountTransferDAO.instance().status(lraId, WITHDRAW);
+        ResponseEntity<?> status = AccountTransferDAO.instance().status(lraId, WITHDRAW);
+        if (status.getBody() == ParticipantStatus.Compensating)
+            CompensationQueue.instance().submit(AccountTransferDAO.instance().getJournalForLRAid(lraId, WITHDRAW));
+        return status;
     }
 
     /**
@@ -114,7 +104,7 @@ public class AccountsWithdrawService {
     @RequestMapping(value = "/after", method = RequestMethod.PUT)
     @AfterLRA
     public ResponseEntity<?> afterLRA(@RequestHeader(LRA_HTTP_ENDED_CONTEXT_HEADER) String lraId, LRAStatus status) throws Exception {
-        log.info("After LRA Called : " + lraId);
+        SagaTrace.instance().event(lraId, "afterLRA", WITHDRAW, String.valueOf(status));
         AccountTransferDAO.instance().afterLRA(lraId, status, WITHDRAW);
         return ResponseEntity.ok().build();
     }
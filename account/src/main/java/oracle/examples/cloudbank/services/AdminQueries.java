@@ -0,0 +1,157 @@
+package oracle.examples.cloudbank.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.model.Journal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Journal and account reads for the admin API that do not load whole tables: keyset pages ordered by id
+ * (pass the last id of a page as afterId to get the next one), and NDJSON streams that write each row to the
+ * response as it is fetched, so memory use does not depend on the number of rows.
+ * Account balances are summed with their slots and ledger entries in the same statement, so a stream holds one
+ * connection rather than taking another per row.
+ */
+@Component
+public class AdminQueries {
+
+    static final String JOURNAL_COLUMNS = "SELECT JOURNAL_ID, JOURNAL_TYPE, ACCOUNT_ID, LRA_ID, LRA_STATE, " +
+            "JOURNAL_AMOUNT, JOURNAL_CREATED FROM JOURNAL";
+    // the balance as AccountLedger reads it, which is also the striped balance when there are no ledger entries
+    private static final String ACCOUNT_COLUMNS = "SELECT a.ACCOUNT_ID, a.ACCOUNT_NAME, a.ACCOUNT_TYPE, " +
+            "a.CUSTOMER_ID, a.ACCOUNT_OPENED_DATE, a.ACCOUNT_OTHER_DETAILS, a.ACCOUNT_BALANCE " +
+            "+ COALESCE((SELECT SUM(s.SLOT_BALANCE) FROM ACCOUNT_BALANCE_SLOTS s WHERE s.ACCOUNT_ID = a.ACCOUNT_ID), 0) " +
+            "+ COALESCE((SELECT SUM(l.ENTRY_AMOUNT) FROM ACCOUNT_LEDGER l WHERE l.ACCOUNT_ID = a.ACCOUNT_ID), 0) " +
+            "AS ACCOUNT_BALANCE, a.ACCOUNT_BALANCE_SLOTS FROM ACCOUNTS a";
+    static final int MAX_PAGE_SIZE = 1000;
+
+    static final RowMapper<Journal> JOURNAL_ROW = (rs, rowNum) -> {
+        Journal journal = new Journal(rs.getString("JOURNAL_TYPE"), rs.getLong("ACCOUNT_ID"),
+                rs.getLong("JOURNAL_AMOUNT"), rs.getString("LRA_ID"), rs.getString("LRA_STATE"));
+        journal.setJournalId(rs.getLong("JOURNAL_ID"));
+        journal.setJournalCreated(rs.getTimestamp("JOURNAL_CREATED"));
+        return journal;
+    };
+
+    private static final RowMapper<Account> ACCOUNT_ROW = (rs, rowNum) -> {
+        Account account = new Account(rs.getString("ACCOUNT_NAME"), rs.getString("ACCOUNT_TYPE"),
+                rs.getString("ACCOUNT_OTHER_DETAILS"), rs.getString("CUSTOMER_ID"));
+        account.setAccountId(rs.getLong("ACCOUNT_ID"));
+        account.setAccountOpenedDate(rs.getTimestamp("ACCOUNT_OPENED_DATE"));
+        account.setAccountBalance(rs.getLong("ACCOUNT_BALANCE"));
+        account.setAccountBalanceSlots(rs.getInt("ACCOUNT_BALANCE_SLOTS"));
+        return account;
+    };
+
+    /**
+     * Journal filters, null for any
+     */
+    public record JournalFilter(Long accountId, String lraId, String journalType, String lraState,
+                                Long minJournalId, Long maxJournalId) {
+
+        String where(long afterId, MapSqlParameterSource params) {
+            StringBuilder where = new StringBuilder(" WHERE JOURNAL_ID > :afterId");
+            params.addValue("afterId", afterId);
+            if (accountId != null) where.append(" AND ACCOUNT_ID = :accountId");
+            if (lraId != null) where.append(" AND LRA_ID = :lraId");
+            if (journalType != null) where.append(" AND JOURNAL_TYPE = :journalType");
+            if (lraState != null) where.append(" AND LRA_STATE = :lraState");
+            if (minJournalId != null) where.append(" AND JOURNAL_ID >= :minJournalId");
+            if (maxJournalId != null) where.append(" AND JOURNAL_ID <= :maxJournalId");
+            params.addValue("accountId", accountId).addValue("lraId", lraId).addValue("journalType", journalType)
+                    .addValue("lraState", lraState).addValue("minJournalId", minJournalId)
+                    .addValue("maxJournalId", maxJournalId);
+            return where.toString();
+        }
+    }
+
+    /**
+     * A page of rows and the afterId of the next page, null if this is the last page
+     */
+    public record KeysetPage<T>(List<T> items, Long nextAfterId) {
+    }
+
+    final NamedParameterJdbcTemplate jdbcTemplate;
+    final ObjectWriter ndjsonWriter;
+    final ObjectMapper objectMapper;
+    final int fetchSize;
+
+    public AdminQueries(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                        @Value("${account.query.fetch-size:500}") int fetchSize) {
+        JdbcTemplate fetching = new JdbcTemplate(jdbcTemplate.getDataSource());
+        fetching.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(fetching);
+        this.objectMapper = objectMapper;
+        this.ndjsonWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.fetchSize = fetchSize;
+    }
+
+    public KeysetPage<Journal> journalPage(JournalFilter filter, long afterId, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String sql = JOURNAL_COLUMNS + filter.where(afterId, params) + " ORDER BY JOURNAL_ID FETCH FIRST :limit ROWS ONLY";
+        List<Journal> journals = jdbcTemplate.query(sql, params.addValue("limit", pageSize(limit)), JOURNAL_ROW);
+        return new KeysetPage<>(journals,
+                journals.size() < pageSize(limit) ? null : journals.get(journals.size() - 1).getJournalId());
+    }
+
+    public void streamJournals(JournalFilter filter, OutputStream out) throws IOException {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        stream(JOURNAL_COLUMNS + filter.where(0, params) + " ORDER BY JOURNAL_ID", params, JOURNAL_ROW, out);
+    }
+
+    public KeysetPage<Account> accountPage(String customerId, long afterId, int limit) {
+        MapSqlParameterSource params = new MapSqlParameterSource("customerId", customerId)
+                .addValue("afterId", afterId)
+                .addValue("limit", pageSize(limit));
+        List<Account> accounts = jdbcTemplate.query(ACCOUNT_COLUMNS + " WHERE a.CUSTOMER_ID = :customerId AND " +
+                "a.ACCOUNT_ID > :afterId ORDER BY a.ACCOUNT_ID FETCH FIRST :limit ROWS ONLY", params, ACCOUNT_ROW);
+        return new KeysetPage<>(accounts,
+                accounts.size() < pageSize(limit) ? null : accounts.get(accounts.size() - 1).getAccountId());
+    }
+
+    public void streamAccounts(String customerId, OutputStream out) throws IOException {
+        stream(ACCOUNT_COLUMNS + " WHERE a.CUSTOMER_ID = :customerId ORDER BY a.ACCOUNT_ID",
+                new MapSqlParameterSource("customerId", customerId), ACCOUNT_ROW, out);
+    }
+
+    /**
+     * Write each row as one line of JSON while the result set is read, flushing once per fetch
+     */
+    private <T> void stream(String sql, MapSqlParameterSource params, RowMapper<T> rowMapper, OutputStream out)
+            throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            int[] rows = {0};
+            jdbcTemplate.query(sql, params, rs -> {
+                try {
+                    ndjsonWriter.writeValue(generator, rowMapper.mapRow(rs, rows[0]));
+                    if (++rows[0] % fetchSize == 0) generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (rows[0] > 0) generator.writeRaw('\n');
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+}
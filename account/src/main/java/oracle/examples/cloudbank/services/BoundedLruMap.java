@@ -0,0 +1,45 @@
+package oracle.examples.cloudbank.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map of at most max-size entries for the in-memory caches, dropping the least recently used entry beyond that.
+ * An access-ordered LinkedHashMap behind a lock, so that an entry removed from the map is also gone from the
+ * order the eldest is taken from. With a max-size of 0 or less nothing is kept.
+ */
+class BoundedLruMap<K, V> {
+
+    private final int maxSize;
+    private final LinkedHashMap<K, V> entries;
+
+    BoundedLruMap(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > BoundedLruMap.this.maxSize;
+            }
+        };
+    }
+
+    synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    synchronized boolean containsKey(K key) {
+        return entries.containsKey(key);
+    }
+
+    synchronized void put(K key, V value) {
+        if (maxSize > 0) entries.put(key, value);
+    }
+
+    synchronized V remove(K key) {
+        return entries.remove(key);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
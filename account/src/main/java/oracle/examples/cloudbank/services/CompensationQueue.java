@@ -0,0 +1,117 @@
+package oracle.examples.cloudbank.services;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import oracle.examples.cloudbank.model.Journal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Withdraw compensations in the background, so the coordinator's compensate callback only has to record the
+ * intent (the journal entry set to Compensating) and gets 202 Compensating back; it then polls status until
+ * the entry is Compensated or FailedToCompensate.
+ * A bounded queue is drained by a fixed number of workers, each crediting up to batch-size withdraws at a time
+ * through the journal writer. When the queue is full the callback compensates inline instead, which slows the
+ * coordinator down rather than growing the backlog. The queue is in memory: a compensation that is lost to a
+ * failure or a restart is queued again by the next status call for it, and the credit is only applied once
+ * because the journal writer does not credit an entry that has already ended.
+ */
+@Component
+public class CompensationQueue {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static CompensationQueue singleton;
+    final AccountTransferDAO accountTransferDAO;
+    final boolean enabled;
+    final int workers;
+    final int batchSize;
+    private final BlockingQueue<Journal> queue;
+    // lraIds of the withdraws queued or being compensated
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final List<Thread> threads = new ArrayList<>();
+
+    public CompensationQueue(AccountTransferDAO accountTransferDAO, MeterRegistry meterRegistry,
+                             @Value("${account.compensation.async.enabled:true}") boolean enabled,
+                             @Value("${account.compensation.workers:4}") int workers,
+                             @Value("${account.compensation.queue-capacity:10000}") int queueCapacity,
+                             @Value("${account.compensation.batch-size:100}") int batchSize) {
+        this.accountTransferDAO = accountTransferDAO;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        Gauge.builder("account.compensation.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+        // queued or being credited, 0 once every accepted compensation has been applied
+        Gauge.builder("account.compensation.pending", pending, Set::size).register(meterRegistry);
+        singleton = this;
+    }
+
+    public static CompensationQueue instance() {
+        return singleton;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) return;
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, "compensation-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            threads.add(worker);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queue the compensation of the withdraw, false if the queue is disabled or full and the caller has to
+     * compensate inline. A withdraw that is already queued or being compensated is not queued again.
+     */
+    public boolean submit(Journal journal) {
+        if (!enabled) return false;
+        if (!pending.add(journal.getLraId())) return true;
+        if (queue.offer(journal)) return true;
+        pending.remove(journal.getLraId());
+        return false;
+    }
+
+    private void work() {
+        List<Journal> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            try {
+                accountTransferDAO.creditAccountsAndSaveJournals(batch,
+                        ParticipantStatus.Compensated, ParticipantStatus.FailedToCompensate);
+            } catch (Exception e) {
+                log.warn("compensating " + batch.size() + " withdraws failed, status calls will queue them again", e);
+            } finally {
+                batch.forEach(journal -> pending.remove(journal.getLraId()));
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package oracle.examples.cloudbank.services;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves journal entries of ended LRAs (participant state Completed, Compensated or failed to either) that are
+ * older than the retention window from JOURNAL to JOURNAL_ARCHIVE, so that the table on the saga path stays small.
+ * Each batch is a short transaction of its own that locks only the rows it moves, and a run stops after
+ * max-batches-per-run so that the archiver never competes with live traffic for long. Rows written before
+ * JOURNAL_CREATED existed have no creation time and are archived as soon as they are in an ended state.
+ */
+@Component
+public class JournalArchiver {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final String ENDED_STATE =
+            "LRA_STATE IN (:completed, :compensated, :failedToComplete, :failedToCompensate)";
+    private static final String SELECT_SQL = "SELECT JOURNAL_ID FROM JOURNAL WHERE " + ENDED_STATE +
+            " AND (JOURNAL_CREATED < :cutoff OR JOURNAL_CREATED IS NULL)";
+    private static final String LOCK_SQL = "SELECT JOURNAL_ID FROM JOURNAL WHERE JOURNAL_ID IN (:ids) AND " +
+            ENDED_STATE + " FOR UPDATE";
+    private static final String ARCHIVE_SQL = "INSERT INTO JOURNAL_ARCHIVE (JOURNAL_ID, JOURNAL_TYPE, ACCOUNT_ID, " +
+            "LRA_ID, LRA_STATE, JOURNAL_AMOUNT, JOURNAL_CREATED, JOURNAL_ARCHIVED) " +
+            "SELECT JOURNAL_ID, JOURNAL_TYPE, ACCOUNT_ID, LRA_ID, LRA_STATE, JOURNAL_AMOUNT, JOURNAL_CREATED, :archived " +
+            "FROM JOURNAL WHERE JOURNAL_ID IN (:ids)";
+    private static final String DELETE_SQL = "DELETE FROM JOURNAL WHERE JOURNAL_ID IN (:ids)";
+
+    final NamedParameterJdbcTemplate jdbcTemplate;
+    final NamedParameterJdbcTemplate selectTemplate;
+    final TransactionTemplate transactionTemplate;
+    final boolean enabled;
+    final long retentionMillis;
+    final int batchSize;
+    final int maxBatchesPerRun;
+
+    public JournalArchiver(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           @Value("${account.journal.archive.enabled:true}") boolean enabled,
+                           @Value("${account.journal.archive.retention-hours:168}") long retentionHours,
+                           @Value("${account.journal.archive.batch-size:500}") int batchSize,
+                           @Value("${account.journal.archive.max-batches-per-run:20}") int maxBatchesPerRun) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        JdbcTemplate limited = new JdbcTemplate(jdbcTemplate.getDataSource());
+        limited.setMaxRows(batchSize);
+        limited.setFetchSize(batchSize);
+        this.selectTemplate = new NamedParameterJdbcTemplate(limited);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    @Scheduled(initialDelayString = "${account.journal.archive.interval-ms:60000}",
+            fixedDelayString = "${account.journal.archive.interval-ms:60000}")
+    public void archive() {
+        if (!enabled) return;
+        long archived = 0;
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            MapSqlParameterSource params = endedStates()
+                    .addValue("cutoff", new Timestamp(System.currentTimeMillis() - retentionMillis));
+            List<Long> ids = selectTemplate.queryForList(SELECT_SQL, params, Long.class);
+            if (ids.isEmpty()) break;
+            archived += archiveBatch(ids);
+            if (ids.size() < batchSize) break;
+        }
+        if (archived > 0) log.info("archived " + archived + " journal entries");
+    }
+
+    /**
+     * Copy and delete the given entries in one transaction, skipping any that are no longer in an ended state
+     */
+    int archiveBatch(List<Long> ids) {
+        Integer archived = transactionTemplate.execute(txStatus -> {
+            List<Long> locked = jdbcTemplate.queryForList(LOCK_SQL, endedStates().addValue("ids", ids), Long.class);
+            if (locked.isEmpty()) return 0;
+            MapSqlParameterSource params = new MapSqlParameterSource("ids", locked)
+                    .addValue("archived", new Timestamp(System.currentTimeMillis()));
+            jdbcTemplate.update(ARCHIVE_SQL, params);
+            return jdbcTemplate.update(DELETE_SQL, params);
+        });
+        return archived == null ? 0 : archived;
+    }
+
+    private static MapSqlParameterSource endedStates() {
+        return new MapSqlParameterSource()
+                .addValue("completed", AccountTransferDAO.getStatusString(ParticipantStatus.Completed))
+                .addValue("compensated", AccountTransferDAO.getStatusString(ParticipantStatus.Compensated))
+                .addValue("failedToComplete", AccountTransferDAO.getStatusString(ParticipantStatus.FailedToComplete))
+                .addValue("failedToCompensate", AccountTransferDAO.getStatusString(ParticipantStatus.FailedToCompensate));
+    }
+}
@@ -0,0 +1,62 @@
+package oracle.examples.cloudbank.services;
+
+import jakarta.annotation.PostConstruct;
+import oracle.examples.cloudbank.repository.JournalRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves a JOURNAL table created while journal ids came from an identity column over to the JOURNAL_SEQ sequence.
+ * Hibernate's schema update creates JOURNAL_SEQ starting at 1 but leaves the existing column alone, so on such a
+ * table the sequence is recreated above the highest id and the identity is dropped, which also marks the table as
+ * migrated: a JOURNAL_ID without an identity is left as it is.
+ */
+@Component
+public class JournalSequence {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    // allocationSize of JOURNAL_SEQ on Journal: the pooled optimizer hands out the 50 ids up to each sequence value
+    static final long ALLOCATION_SIZE = 50;
+
+    private static final String ORACLE_IDENTITY_SQL = "SELECT COUNT(*) FROM USER_TAB_IDENTITY_COLS " +
+            "WHERE TABLE_NAME = 'JOURNAL' AND COLUMN_NAME = 'JOURNAL_ID'";
+    private static final String IDENTITY_SQL = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS " +
+            "WHERE TABLE_NAME = 'JOURNAL' AND COLUMN_NAME = 'JOURNAL_ID' AND IS_IDENTITY = 'YES'";
+    private static final String MAX_ID_SQL = "SELECT COALESCE(MAX(JOURNAL_ID), 0) FROM JOURNAL";
+
+    final JdbcTemplate jdbcTemplate;
+
+    // the repository is only injected so that the schema exists before it is migrated
+    public JournalSequence(JdbcTemplate jdbcTemplate, JournalRepository journalRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void migrate() {
+        boolean oracle = true;
+        Integer identities;
+        try {
+            identities = jdbcTemplate.queryForObject(ORACLE_IDENTITY_SQL, Integer.class);
+        } catch (DataAccessException e) {
+            // not Oracle, the standard information schema
+            oracle = false;
+            identities = jdbcTemplate.queryForObject(IDENTITY_SQL, Integer.class);
+        }
+        if (identities == null || identities == 0) return;
+        long maxId = jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class);
+        try {
+            jdbcTemplate.execute("DROP SEQUENCE JOURNAL_SEQ");
+        } catch (DataAccessException e) {
+            // not created by the schema update
+        }
+        jdbcTemplate.execute("CREATE SEQUENCE JOURNAL_SEQ START WITH " + (maxId + ALLOCATION_SIZE) +
+                " INCREMENT BY " + ALLOCATION_SIZE);
+        // dropped last, so that a migration interrupted before this point is done again on the next start
+        jdbcTemplate.execute(oracle ? "ALTER TABLE JOURNAL MODIFY JOURNAL_ID DROP IDENTITY"
+                : "ALTER TABLE JOURNAL ALTER COLUMN JOURNAL_ID DROP IDENTITY");
+        log.info("JOURNAL ids moved from the identity column to JOURNAL_SEQ, starting above " + maxId);
+    }
+}
@@ -0,0 +1,521 @@
+package oracle.examples.cloudbank.services;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.model.LedgerEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group commit for journal writes and the balance changes that go with them.
+ * Concurrent requests are queued and a single flusher thread writes whatever has queued up
+ * (up to max-batch-size) as JDBC batches in one transaction. Callers block until their batch has committed,
+ * so a response is never sent for a write that is not durable. A caller waits at most commit-wait-ms; a write
+ * still queued by then is taken off the queue and fails, as do writes still queued when the service stops.
+ * With group commit disabled each request is written in its own transaction on the caller's thread.
+ * In ledger mode balance changes are appended to ACCOUNT_LEDGER instead of updating ACCOUNTS (see AccountLedger).
+ * A local transfer (both accounts on this service) is a single request, so its debit, credit and both journal
+ * entries always commit in the same transaction.
+ * The accounts whose balances a batch changed are evicted from the account cache after it commits,
+ * before any caller is released.
+ */
+@Component
+public class JournalWriter {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final String DEBIT_SQL = "UPDATE ACCOUNTS SET ACCOUNT_BALANCE = ACCOUNT_BALANCE - ? " +
+            "WHERE ACCOUNT_ID = ? AND ACCOUNT_BALANCE >= ?";
+    private static final String CREDIT_SQL = "UPDATE ACCOUNTS SET ACCOUNT_BALANCE = ACCOUNT_BALANCE + ? " +
+            "WHERE ACCOUNT_ID = ?";
+    private static final String UPDATE_STATE_SQL = "UPDATE JOURNAL SET LRA_STATE = ? WHERE JOURNAL_ID = ?";
+    // sets the state only if the entry has not ended yet, so a repeated callback cannot credit twice and a late
+    // state update cannot overwrite a final state
+    private static final String CLAIM_SQL = "UPDATE JOURNAL SET LRA_STATE = ? WHERE JOURNAL_ID = ? " +
+            "AND (LRA_STATE IS NULL OR LRA_STATE NOT IN (?, ?, ?, ?))";
+    private static final String STATE_SQL = "SELECT LRA_STATE FROM JOURNAL WHERE JOURNAL_ID = ?";
+
+    enum Operation {
+        INSERT, UPDATE_STATE, DEBIT_AND_INSERT, CREDIT_AND_UPDATE_STATE, TRANSFER
+    }
+
+    static class WriteRequest {
+        final Operation operation;
+        final Journal journal;
+        // the deposit side of a TRANSFER, journal being the withdraw side
+        final Journal deposit;
+        final long amount;
+        final ParticipantStatus successStatus;
+        final ParticipantStatus failureStatus;
+        final CompletableFuture<Boolean> done = new CompletableFuture<>();
+        boolean succeeded;
+        boolean alreadyEnded;
+
+        WriteRequest(Operation operation, Journal journal,
+                     ParticipantStatus successStatus, ParticipantStatus failureStatus) {
+            this(operation, journal, null, successStatus, failureStatus);
+        }
+
+        WriteRequest(Operation operation, Journal journal, Journal deposit,
+                     ParticipantStatus successStatus, ParticipantStatus failureStatus) {
+            this.operation = operation;
+            this.journal = journal;
+            this.deposit = deposit;
+            this.amount = journal.getJournalAmount();
+            this.successStatus = successStatus;
+            this.failureStatus = failureStatus;
+        }
+    }
+
+    @PersistenceContext
+    EntityManager entityManager;
+    final JdbcTemplate jdbcTemplate;
+    final TransactionTemplate transactionTemplate;
+    final StripedBalances stripedBalances;
+    final AccountLedger accountLedger;
+    final AccountCache accountCache;
+    final SagaMetrics sagaMetrics;
+    final boolean groupCommitEnabled;
+    final int maxBatchSize;
+    final long commitWaitMillis;
+    private final BlockingQueue<WriteRequest> queue = new LinkedBlockingQueue<>();
+    private Thread flusher;
+    private volatile boolean stopped;
+
+    // the journal sequence is only injected so that JOURNAL_SEQ is migrated before the first insert
+    public JournalWriter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         StripedBalances stripedBalances, AccountLedger accountLedger, AccountCache accountCache,
+                         SagaMetrics sagaMetrics, JournalSequence journalSequence,
+                         @Value("${account.journal.group-commit.enabled:true}") boolean groupCommitEnabled,
+                         @Value("${account.journal.group-commit.max-batch-size:100}") int maxBatchSize,
+                         @Value("${account.journal.group-commit.commit-wait-ms:30000}") long commitWaitMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.stripedBalances = stripedBalances;
+        this.accountLedger = accountLedger;
+        this.accountCache = accountCache;
+        this.sagaMetrics = sagaMetrics;
+        this.groupCommitEnabled = groupCommitEnabled;
+        this.maxBatchSize = maxBatchSize;
+        this.commitWaitMillis = commitWaitMillis;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!groupCommitEnabled) return;
+        flusher = new Thread(this::flushLoop, "journal-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Let the flusher finish the batch it is writing, then fail the writes that are still queued
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopped = true;
+        if (flusher == null) return;
+        flusher.interrupt();
+        flusher.join(commitWaitMillis);
+        List<WriteRequest> unwritten = new ArrayList<>();
+        queue.drainTo(unwritten);
+        unwritten.forEach(request -> request.done.completeExceptionally(
+                new IllegalStateException("journal writer stopped before the write was committed")));
+    }
+
+    public void insert(Journal journal) {
+        submit(new WriteRequest(Operation.INSERT, journal, null, null));
+    }
+
+    /**
+     * Set the journal state, unless the entry has already ended, in which case the journal is given its stored state
+     */
+    public void updateState(Journal journal) {
+        submit(new WriteRequest(Operation.UPDATE_STATE, journal, null, null));
+    }
+
+    /**
+     * Debit the account and insert the journal entry. If the debit fails the entry is written with a 0 amount.
+     */
+    public boolean debitAndInsert(Journal journal) {
+        return submit(new WriteRequest(Operation.DEBIT_AND_INSERT, journal, null, null));
+    }
+
+    /**
+     * Credit the account with the journal amount and set the journal state to successStatus, or failureStatus
+     * if the account does not exist. A 0 amount has nothing to credit and always succeeds.
+     * If the journal entry has already ended nothing is changed and the journal is given its stored state.
+     */
+    public boolean creditAndUpdateState(Journal journal, ParticipantStatus successStatus,
+                                        ParticipantStatus failureStatus) {
+        return submit(new WriteRequest(Operation.CREDIT_AND_UPDATE_STATE, journal, successStatus, failureStatus));
+    }
+
+    /**
+     * creditAndUpdateState for each journal, queued together so that they are written in as few batches as possible
+     */
+    public void creditAndUpdateStates(List<Journal> journals, ParticipantStatus successStatus,
+                                      ParticipantStatus failureStatus) {
+        submit(journals.stream()
+                .map(journal -> new WriteRequest(Operation.CREDIT_AND_UPDATE_STATE, journal, successStatus, failureStatus))
+                .toList());
+    }
+
+    /**
+     * Debit the withdraw journal's account and credit the deposit journal's account with the same amount, and
+     * insert both journal entries, all or nothing. Fails, without writing anything, if the source account does not
+     * exist or has insufficient funds, or the target account does not exist.
+     */
+    public boolean transfer(Journal withdraw, Journal deposit) {
+        return submit(new WriteRequest(Operation.TRANSFER, withdraw, deposit, null, null));
+    }
+
+    private boolean submit(WriteRequest request) {
+        return submit(List.of(request)).get(0);
+    }
+
+    private List<Boolean> submit(List<WriteRequest> requests) {
+        long start = System.nanoTime();
+        if (stopped) throw new IllegalStateException("journal writer stopped");
+        if (groupCommitEnabled) queue.addAll(requests);
+        else if (requests.stream().anyMatch(request -> request.operation == Operation.TRANSFER)) {
+            // two transfers between the same accounts in opposite directions would deadlock
+            synchronized (this) {
+                flush(requests);
+            }
+        } else flush(requests);
+        try {
+            List<Boolean> results = new ArrayList<>(requests.size());
+            for (WriteRequest request : requests) results.add(await(request, start));
+            return results;
+        } finally {
+            sagaMetrics.recordJournalCommitWait(start);
+        }
+    }
+
+    private boolean await(WriteRequest request, long submitted) {
+        try {
+            long remaining = commitWaitMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted);
+            return request.done.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            // once off the queue it is never written, otherwise it is in the batch being written
+            throw new IllegalStateException(queue.remove(request) ? "journal write not committed within " +
+                    commitWaitMillis + "ms" : "journal write did not finish within " + commitWaitMillis +
+                    "ms, it may still commit");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for the journal write", e);
+        }
+    }
+
+    private void flushLoop() {
+        List<WriteRequest> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write the batch in one transaction. If that fails, retry each request on its own so that
+     * one bad request only fails its own caller.
+     */
+    private void flush(List<WriteRequest> batch) {
+        long start = System.nanoTime();
+        try {
+            transactionTemplate.executeWithoutResult(txStatus -> write(batch));
+        } catch (Exception e) {
+            sagaMetrics.recordJournalFlush(start, batch.size(), false);
+            if (batch.size() == 1) {
+                reset(batch.get(0));
+                batch.get(0).done.completeExceptionally(e);
+                return;
+            }
+            log.warn("group commit of " + batch.size() + " journal writes failed, retrying individually", e);
+            for (WriteRequest request : batch) {
+                reset(request);
+                flush(List.of(request));
+            }
+            return;
+        }
+        // committed, so whatever happens from here the batch must not be written again
+        try {
+            sagaMetrics.recordJournalFlush(start, batch.size(), true);
+            invalidateBalances(batch);
+        } catch (RuntimeException e) {
+            log.warn("after committing " + batch.size() + " journal writes", e);
+        }
+        batch.forEach(request -> request.done.complete(request.succeeded));
+    }
+
+    private void write(List<WriteRequest> batch) {
+        List<WriteRequest> credits = new ArrayList<>();
+        List<WriteRequest> debits = new ArrayList<>();
+        List<WriteRequest> inserts = new ArrayList<>();
+        List<WriteRequest> stateUpdates = new ArrayList<>();
+        List<WriteRequest> failedCredits = new ArrayList<>();
+        List<WriteRequest> transfers = new ArrayList<>();
+        for (WriteRequest request : batch) {
+            request.succeeded = true;
+            request.alreadyEnded = false;
+            switch (request.operation) {
+                case INSERT -> inserts.add(request);
+                case UPDATE_STATE -> stateUpdates.add(request);
+                case DEBIT_AND_INSERT -> { debits.add(request); inserts.add(request); }
+                case CREDIT_AND_UPDATE_STATE -> credits.add(request);
+                case TRANSFER -> transfers.add(request);
+            }
+        }
+        claim(stateUpdates);
+        claim(credits);
+        if (accountLedger.isEnabled()) checkLedgerBalances(credits, debits, transfers);
+        else {
+            updateAccountBalances(credits, debits);
+            updateTransferBalances(transfers);
+        }
+        for (WriteRequest request : credits) {
+            if (request.alreadyEnded || request.succeeded) continue;
+            request.journal.setLraState(AccountTransferDAO.getStatusString(request.failureStatus));
+            failedCredits.add(request);
+        }
+        for (WriteRequest request : debits) {
+            if (!request.succeeded) request.journal.setJournalAmount(0);
+        }
+        // inserts are batched by Hibernate (hibernate.jdbc.batch_size) using pooled sequence ids
+        inserts.forEach(request -> entityManager.persist(request.journal));
+        for (WriteRequest request : transfers) {
+            if (!request.succeeded) continue;
+            entityManager.persist(request.journal);
+            entityManager.persist(request.deposit);
+        }
+        if (accountLedger.isEnabled()) appendToLedger(credits, debits, transfers);
+        entityManager.flush();
+        jdbcTemplate.batchUpdate(UPDATE_STATE_SQL, failedCredits, failedCredits.size(), (ps, request) -> {
+            ps.setString(1, request.journal.getLraState());
+            ps.setLong(2, request.journal.getJournalId());
+        });
+    }
+
+    /**
+     * Update the ACCOUNTS rows (or the slots of striped accounts), credits first so that a debit in the same
+     * batch sees the higher balance.
+     */
+    private void updateAccountBalances(List<WriteRequest> credits, List<WriteRequest> debits) {
+        List<WriteRequest> batchedCredits = new ArrayList<>();
+        for (WriteRequest request : credits) {
+            if (request.amount == 0 || request.alreadyEnded) continue;
+            if (stripedBalances.isStriped(request.journal.getAccountId()))
+                request.succeeded = stripedBalances.credit(request.journal.getAccountId(), request.amount);
+            else batchedCredits.add(request);
+        }
+        int[] creditCounts = updateBalances(CREDIT_SQL, batchedCredits, false);
+        for (int i = 0; i < batchedCredits.size(); i++) batchedCredits.get(i).succeeded = creditCounts[i] == 1;
+        List<WriteRequest> batchedDebits = new ArrayList<>();
+        for (WriteRequest request : debits) {
+            if (stripedBalances.isStriped(request.journal.getAccountId()))
+                request.succeeded = stripedBalances.debit(request.journal.getAccountId(), request.amount);
+            else batchedDebits.add(request);
+        }
+        int[] debitCounts = updateBalances(DEBIT_SQL, batchedDebits, true);
+        for (int i = 0; i < batchedDebits.size(); i++) batchedDebits.get(i).succeeded = debitCounts[i] == 1;
+    }
+
+    /**
+     * Local transfers: debit the source accounts, credit the targets of the debits that succeeded, and credit
+     * the source back where the target does not exist, so a transfer changes both balances or neither.
+     */
+    private void updateTransferBalances(List<WriteRequest> transfers) {
+        if (transfers.isEmpty()) return;
+        List<WriteRequest> debited = updateTransferSide(transfers, request -> request.journal, true);
+        List<WriteRequest> credited = updateTransferSide(debited, request -> request.deposit, false);
+        transfers.forEach(request -> request.succeeded = false);
+        credited.forEach(request -> request.succeeded = true);
+        List<WriteRequest> refunds = debited.stream().filter(request -> !request.succeeded).toList();
+        updateTransferSide(refunds, request -> request.journal, false);
+    }
+
+    /**
+     * Debit or credit the account of one side of each transfer (the slots if it is striped), the transfers whose
+     * balance was changed
+     */
+    private List<WriteRequest> updateTransferSide(List<WriteRequest> transfers, Function<WriteRequest, Journal> side,
+                                                  boolean debit) {
+        List<WriteRequest> updated = new ArrayList<>();
+        List<WriteRequest> batched = new ArrayList<>();
+        for (WriteRequest request : transfers) {
+            long accountId = side.apply(request).getAccountId();
+            if (!stripedBalances.isStriped(accountId)) batched.add(request);
+            else if (debit ? stripedBalances.debit(accountId, request.amount)
+                    : stripedBalances.credit(accountId, request.amount)) updated.add(request);
+        }
+        int[] counts = updateBalances(debit ? DEBIT_SQL : CREDIT_SQL, batched, side, debit);
+        for (int i = 0; i < batched.size(); i++) if (counts[i] == 1) updated.add(batched.get(i));
+        return updated;
+    }
+
+    /**
+     * Ledger mode: read the balances of the accounts in the batch once and apply the credits, the debits and then
+     * the transfers to them in memory, so a debit fails if the account does not exist or would go below zero.
+     */
+    private void checkLedgerBalances(List<WriteRequest> credits, List<WriteRequest> debits,
+                                     List<WriteRequest> transfers) {
+        Set<Long> debitedIds = new HashSet<>();
+        debits.forEach(request -> debitedIds.add(request.journal.getAccountId()));
+        transfers.forEach(request -> debitedIds.add(request.journal.getAccountId()));
+        accountLedger.lockForDebit(debitedIds);
+        Set<Long> accountIds = new HashSet<>(debitedIds);
+        credits.forEach(request -> accountIds.add(request.journal.getAccountId()));
+        transfers.forEach(request -> accountIds.add(request.deposit.getAccountId()));
+        Map<Long, Long> balances = accountLedger.balances(accountIds);
+        for (WriteRequest request : credits) {
+            if (request.amount == 0 || request.alreadyEnded) continue;
+            request.succeeded = balances.containsKey(request.journal.getAccountId());
+            if (request.succeeded) balances.merge(request.journal.getAccountId(), request.amount, Long::sum);
+        }
+        for (WriteRequest request : debits) {
+            Long balance = balances.get(request.journal.getAccountId());
+            request.succeeded = balance != null && balance >= request.amount;
+            if (request.succeeded) balances.put(request.journal.getAccountId(), balance - request.amount);
+        }
+        for (WriteRequest request : transfers) {
+            Long balance = balances.get(request.journal.getAccountId());
+            request.succeeded = balance != null && balance >= request.amount &&
+                    balances.containsKey(request.deposit.getAccountId());
+            if (!request.succeeded) continue;
+            balances.put(request.journal.getAccountId(), balance - request.amount);
+            balances.merge(request.deposit.getAccountId(), request.amount, Long::sum);
+        }
+    }
+
+    /**
+     * Ledger mode: one entry per balance change, after the journal inserts so the debits have their journal ids
+     */
+    private void appendToLedger(List<WriteRequest> credits, List<WriteRequest> debits, List<WriteRequest> transfers) {
+        for (WriteRequest request : credits) {
+            if (request.amount == 0 || request.alreadyEnded || !request.succeeded) continue;
+            entityManager.persist(new LedgerEntry(request.journal.getAccountId(), request.journal.getJournalId(),
+                    request.amount));
+        }
+        for (WriteRequest request : debits) {
+            if (request.amount == 0 || !request.succeeded) continue;
+            entityManager.persist(new LedgerEntry(request.journal.getAccountId(), request.journal.getJournalId(),
+                    -request.amount));
+        }
+        for (WriteRequest request : transfers) {
+            if (!request.succeeded) continue;
+            entityManager.persist(new LedgerEntry(request.journal.getAccountId(), request.journal.getJournalId(),
+                    -request.amount));
+            entityManager.persist(new LedgerEntry(request.deposit.getAccountId(), request.deposit.getJournalId(),
+                    request.amount));
+        }
+    }
+
+    /**
+     * Set each journal entry to its new state (a credit's success state) unless it has already ended. Entries
+     * that had ended are marked alreadyEnded and given their stored state; credits that were claimed are set back
+     * to failureStatus if the credit fails.
+     */
+    private void claim(List<WriteRequest> requests) {
+        if (requests.isEmpty()) return;
+        int i = 0;
+        for (int[] counts : jdbcTemplate.batchUpdate(CLAIM_SQL, requests, requests.size(), (ps, request) -> {
+            ps.setString(1, newState(request));
+            ps.setLong(2, request.journal.getJournalId());
+            ps.setString(3, AccountTransferDAO.getStatusString(ParticipantStatus.Completed));
+            ps.setString(4, AccountTransferDAO.getStatusString(ParticipantStatus.Compensated));
+            ps.setString(5, AccountTransferDAO.getStatusString(ParticipantStatus.FailedToComplete));
+            ps.setString(6, AccountTransferDAO.getStatusString(ParticipantStatus.FailedToCompensate));
+        })) {
+            for (int count : counts) {
+                WriteRequest request = requests.get(i++);
+                if (count == 1) {
+                    request.journal.setLraState(newState(request));
+                    continue;
+                }
+                request.alreadyEnded = true;
+                // an archived entry is no longer in JOURNAL and keeps the state it was archived with
+                jdbcTemplate.query(STATE_SQL, rs -> {
+                    request.journal.setLraState(rs.getString(1));
+                }, request.journal.getJournalId());
+            }
+        }
+    }
+
+    private static String newState(WriteRequest request) {
+        return request.operation == Operation.CREDIT_AND_UPDATE_STATE ?
+                AccountTransferDAO.getStatusString(request.successStatus) : request.journal.getLraState();
+    }
+
+    private int[] updateBalances(String sql, List<WriteRequest> requests, boolean fundsCheck) {
+        return updateBalances(sql, requests, request -> request.journal, fundsCheck);
+    }
+
+    private int[] updateBalances(String sql, List<WriteRequest> requests, Function<WriteRequest, Journal> side,
+                                 boolean fundsCheck) {
+        int[] result = new int[requests.size()];
+        if (requests.isEmpty()) return result;
+        int i = 0;
+        for (int[] counts : jdbcTemplate.batchUpdate(sql, requests, requests.size(), (ps, request) -> {
+            ps.setLong(1, request.amount);
+            ps.setLong(2, side.apply(request).getAccountId());
+            if (fundsCheck) ps.setLong(3, request.amount);
+        })) {
+            for (int count : counts) result[i++] = count;
+        }
+        return result;
+    }
+
+    private void invalidateBalances(List<WriteRequest> batch) {
+        for (WriteRequest request : batch) {
+            if (request.operation == Operation.TRANSFER && request.succeeded) {
+                accountCache.invalidate(request.journal.getAccountId());
+                accountCache.invalidate(request.deposit.getAccountId());
+                continue;
+            }
+            if ((request.operation == Operation.DEBIT_AND_INSERT || request.operation == Operation.CREDIT_AND_UPDATE_STATE)
+                    && request.amount != 0 && request.succeeded && !request.alreadyEnded)
+                accountCache.invalidate(request.journal.getAccountId());
+        }
+    }
+
+    /**
+     * Undo the in-memory changes of a rolled back write so it can be retried.
+     */
+    private void reset(WriteRequest request) {
+        request.journal.setJournalAmount(request.amount);
+        if (request.operation == Operation.INSERT || request.operation == Operation.DEBIT_AND_INSERT
+                || request.operation == Operation.TRANSFER)
+            request.journal.setJournalId(0);
+        if (request.deposit != null) request.deposit.setJournalId(0);
+    }
+}
@@ -0,0 +1,141 @@
+package oracle.examples.cloudbank.services;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import oracle.examples.cloudbank.model.Journal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Startup recovery of the participants that were in flight when the service stopped.
+ * JOURNAL is scanned for entries that are Active, Compensating or Completing, split into id ranges that are
+ * read in parallel, and the entries are put in the participant state cache so the callbacks that follow do not
+ * query JOURNAL one at a time. Withdraw compensations that were interrupted are queued again.
+ * Until the scan has finished this health indicator is down, and it is part of the readiness group, so the
+ * pod only receives traffic once its state is rebuilt. A failed scan is logged and reported as up, callbacks
+ * then read the journal as before. The time taken is published as account.recovery.duration.
+ */
+@Component
+public class ParticipantRecovery implements HealthIndicator {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final String IN_FLIGHT = " LRA_STATE IN (?, ?, ?)";
+    private static final String RANGE_SQL = "SELECT MIN(JOURNAL_ID), MAX(JOURNAL_ID) FROM JOURNAL WHERE" + IN_FLIGHT;
+    private static final String SCAN_SQL = AdminQueries.JOURNAL_COLUMNS +
+            " WHERE JOURNAL_ID BETWEEN ? AND ? AND" + IN_FLIGHT;
+
+    final JdbcTemplate jdbcTemplate;
+    final ParticipantStateCache participantStateCache;
+    final CompensationQueue compensationQueue;
+    final Timer recoveryTimer;
+    final boolean enabled;
+    final int threads;
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+    private volatile boolean done;
+    private volatile long durationMillis;
+    private volatile String error;
+
+    public ParticipantRecovery(JdbcTemplate jdbcTemplate, ParticipantStateCache participantStateCache,
+                               CompensationQueue compensationQueue, MeterRegistry meterRegistry,
+                               @Value("${account.recovery.enabled:true}") boolean enabled,
+                               @Value("${account.recovery.threads:4}") int threads,
+                               @Value("${account.query.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.participantStateCache = participantStateCache;
+        this.compensationQueue = compensationQueue;
+        this.enabled = enabled;
+        this.threads = Math.max(1, threads);
+        this.recoveryTimer = Timer.builder("account.recovery.duration").register(meterRegistry);
+        Gauge.builder("account.recovery.participants", recovered, AtomicLong::get).register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            done = true;
+            return;
+        }
+        Thread scanner = new Thread(this::recover, "participant-recovery");
+        scanner.setDaemon(true);
+        scanner.start();
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = done ? Health.up() : Health.down();
+        health.withDetail("recovered", recovered.get()).withDetail("resumedCompensations", resumed.get());
+        if (done) health.withDetail("durationMs", durationMillis);
+        if (error != null) health.withDetail("error", error);
+        return health.build();
+    }
+
+    private void recover() {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long[] range = jdbcTemplate.query(RANGE_SQL, rs -> {
+                rs.next();
+                return rs.getObject(1) == null ? null : new long[]{rs.getLong(1), rs.getLong(2)};
+            }, inFlightStates());
+            if (range == null) return;
+            long span = (range[1] - range[0]) / threads + 1;
+            List<CompletableFuture<Void>> scans = new ArrayList<>();
+            for (long from = range[0]; from <= range[1]; from += span) {
+                long to = Math.min(range[1], from + span - 1);
+                long first = from;
+                scans.add(CompletableFuture.runAsync(() -> scan(first, to), pool));
+            }
+            CompletableFuture.allOf(scans.toArray(CompletableFuture[]::new)).join();
+        } catch (Exception e) {
+            error = e.getMessage();
+            log.warn("participant recovery scan failed, journals are read on their next callback instead", e);
+        } finally {
+            pool.shutdownNow();
+            long elapsed = System.nanoTime() - start;
+            recoveryTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            durationMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            done = true;
+            log.info("recovered " + recovered.get() + " in-flight participants (" + resumed.get() +
+                    " compensations resumed) in " + durationMillis + "ms");
+        }
+    }
+
+    private void scan(long fromJournalId, long toJournalId) {
+        String compensating = AccountTransferDAO.getStatusString(ParticipantStatus.Compensating);
+        Object[] states = inFlightStates();
+        Object[] params = {fromJournalId, toJournalId, states[0], states[1], states[2]};
+        jdbcTemplate.query(SCAN_SQL, rs -> {
+            Journal journal = AdminQueries.JOURNAL_ROW.mapRow(rs, 0);
+            participantStateCache.recover(journal);
+            recovered.incrementAndGet();
+            if (AccountsWithdrawService.WITHDRAW.equals(journal.getJournalType()) &&
+                    compensating.equals(journal.getLraState()) && compensationQueue.submit(journal)) {
+                resumed.incrementAndGet();
+            }
+        }, params);
+    }
+
+    private static Object[] inFlightStates() {
+        return new Object[]{AccountTransferDAO.getStatusString(ParticipantStatus.Active),
+                AccountTransferDAO.getStatusString(ParticipantStatus.Compensating),
+                AccountTransferDAO.getStatusString(ParticipantStatus.Completing)};
+    }
+}
@@ -0,0 +1,85 @@
+package oracle.examples.cloudbank.services;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.model.Journal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded cache of the journal entry of each active LRA participant, keyed by (lraId, journalType),
+ * so coordinator callbacks do not have to query JOURNAL.
+ * Entries are only put after the journal write has committed, and copies are handed out so that
+ * a caller changing a journal it has not saved yet does not change the cached state.
+ * The least recently used entries are dropped once max-size is reached; a miss falls back to the database.
+ * This assumes a single account service instance owns the journal, otherwise set max-size to 0 to disable.
+ * Participants that have ended (Completed, Compensated or failed to either) are kept only as their final state,
+ * in a separate bounded map that afterLRA does not evict, so repeated coordinator callbacks can be answered
+ * from memory. An ended state never changes, so these entries cannot go stale even with several instances.
+ */
+@Component
+public class ParticipantStateCache {
+
+    record Key(String lraId, String journalType) {
+    }
+
+    final int maxSize;
+    final int endedMaxSize;
+    private final BoundedLruMap<Key, Journal> journals;
+    private final BoundedLruMap<Key, ParticipantStatus> endedStates;
+
+    public ParticipantStateCache(@Value("${account.journal.cache.max-size:10000}") int maxSize,
+                                 @Value("${account.journal.cache.ended-max-size:100000}") int endedMaxSize) {
+        this.maxSize = maxSize;
+        this.endedMaxSize = endedMaxSize;
+        this.journals = new BoundedLruMap<>(maxSize);
+        this.endedStates = new BoundedLruMap<>(endedMaxSize);
+    }
+
+    public Journal get(String lraId, String journalType) {
+        Journal journal = journals.get(new Key(lraId, journalType));
+        return journal == null ? null : copy(journal);
+    }
+
+    /**
+     * The final state of the participant if it has ended, otherwise null
+     */
+    public ParticipantStatus getEnded(String lraId, String journalType) {
+        return endedStates.get(new Key(lraId, journalType));
+    }
+
+    public void put(Journal journal) {
+        Key key = new Key(journal.getLraId(), journal.getJournalType());
+        ParticipantStatus status = AccountTransferDAO.getStatusFromString(journal.getLraState());
+        if (isEnded(status)) {
+            journals.remove(key);
+            endedStates.put(key, status);
+        } else {
+            journals.put(key, copy(journal));
+        }
+    }
+
+    /**
+     * Put a journal read by the startup recovery scan, unless a callback has cached the participant meanwhile
+     */
+    public void recover(Journal journal) {
+        Key key = new Key(journal.getLraId(), journal.getJournalType());
+        if (endedStates.containsKey(key) || journals.containsKey(key)) return;
+        journals.put(key, copy(journal));
+    }
+
+    public void evict(String lraId, String journalType) {
+        journals.remove(new Key(lraId, journalType));
+    }
+
+    static boolean isEnded(ParticipantStatus status) {
+        return status == ParticipantStatus.Completed || status == ParticipantStatus.Compensated
+                || status == ParticipantStatus.FailedToComplete || status == ParticipantStatus.FailedToCompensate;
+    }
+
+    private static Journal copy(Journal journal) {
+        Journal copy = new Journal(journal.getJournalType(), journal.getAccountId(), journal.getJournalAmount(),
+                journal.getLraId(), journal.getLraState());
+        copy.setJournalId(journal.getJournalId());
+        return copy;
+    }
+}
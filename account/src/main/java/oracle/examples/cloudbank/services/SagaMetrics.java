@@ -0,0 +1,123 @@
+package oracle.examples.cloudbank.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Micrometer timers for the participant side of the saga, exposed through /actuator/prometheus:
+ *  - account.participant: withdraw, deposit, completeWork and compensateWork by participant and outcome
+ *  - account.dao: journal and account lookups, and whether the journal came from the cache or the database
+ *  - account.journal.flush, account.journal.commit.wait and account.journal.batch.size for the group commit
+ * Timers are created once per tag combination and then looked up by the tag values, without building a key.
+ * Participant calls are also traced, see SagaTrace.
+ */
+@Component
+public class SagaMetrics {
+
+    private record ParticipantCall(String phase, String participant, String outcome) {
+    }
+
+    private record Query(String query, String source) {
+    }
+
+    private static SagaMetrics singleton;
+    final MeterRegistry meterRegistry;
+    final SagaTrace sagaTrace;
+    private final Map<ParticipantCall, Timer> participantTimers = new ConcurrentHashMap<>();
+    private final Map<Query, Timer> queryTimers = new ConcurrentHashMap<>();
+    private final Function<ParticipantCall, Timer> newParticipantTimer;
+    private final Function<Query, Timer> newQueryTimer;
+    private final Timer journalFlushCommitted;
+    private final Timer journalFlushFailed;
+    private final Timer journalCommitWait;
+    private final DistributionSummary journalBatchSize;
+
+    public SagaMetrics(MeterRegistry meterRegistry, SagaTrace sagaTrace) {
+        this.meterRegistry = meterRegistry;
+        this.sagaTrace = sagaTrace;
+        this.newParticipantTimer = call -> Timer.builder("account.participant")
+                .tags("phase", call.phase(), "participant", call.participant(), "outcome", call.outcome())
+                .register(meterRegistry);
+        this.newQueryTimer = query -> Timer.builder("account.dao")
+                .tags("query", query.query(), "source", query.source())
+                .register(meterRegistry);
+        this.journalFlushCommitted = Timer.builder("account.journal.flush").tags("outcome", "committed")
+                .register(meterRegistry);
+        this.journalFlushFailed = Timer.builder("account.journal.flush").tags("outcome", "failed")
+                .register(meterRegistry);
+        this.journalCommitWait = Timer.builder("account.journal.commit.wait").register(meterRegistry);
+        this.journalBatchSize = DistributionSummary.builder("account.journal.batch.size")
+                .description("journal writes per group commit")
+                .register(meterRegistry);
+        singleton = this;
+    }
+
+    public static SagaMetrics instance() {
+        return singleton;
+    }
+
+    public ResponseEntity<?> timeParticipantCall(String phase, String journalType, String lraId,
+                                                 Callable<ResponseEntity<?>> call) throws Exception {
+        return timeParticipantCall(phase, journalType, lraId, SagaTrace.NONE, SagaTrace.NONE, call);
+    }
+
+    /**
+     * Time a participant endpoint, tagging it with the outcome reported in the response,
+     * and trace it with the full response.
+     */
+    public ResponseEntity<?> timeParticipantCall(String phase, String journalType, String lraId,
+                                                 long accountId, long amount,
+                                                 Callable<ResponseEntity<?>> call) throws Exception {
+        long start = System.nanoTime();
+        Object body = null;
+        String outcome = "error";
+        try {
+            ResponseEntity<?> response = call.call();
+            body = response.getBody();
+            outcome = outcome(body);
+            return response;
+        } finally {
+            record(start, participantTimers.computeIfAbsent(new ParticipantCall(phase, journalType, outcome),
+                    newParticipantTimer));
+            sagaTrace.event(lraId, phase, journalType, accountId, amount,
+                    body == null ? outcome : body.toString(), start);
+        }
+    }
+
+    public void recordQuery(long start, String query, String source) {
+        record(start, queryTimers.computeIfAbsent(new Query(query, source), newQueryTimer));
+    }
+
+    public void recordJournalFlush(long start, int batchSize, boolean committed) {
+        journalBatchSize.record(batchSize);
+        record(start, committed ? journalFlushCommitted : journalFlushFailed);
+    }
+
+    public void recordJournalCommitWait(long start) {
+        record(start, journalCommitWait);
+    }
+
+    private static void record(long start, Timer timer) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * "withdraw succeeded", "deposit failed: ..." and participant status names, as a small set of tag values
+     */
+    private static String outcome(Object body) {
+        if (body == null) return "none";
+        String outcome = body.toString();
+        if (outcome.contains("succeeded")) return "succeeded";
+        if (outcome.contains("failed")) return "failed";
+        return outcome;
+    }
+}
@@ -0,0 +1,180 @@
+package oracle.examples.cloudbank.services;
+
+import jakarta.annotation.PostConstruct;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.repository.AccountBalanceSlotRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Striped balances for hot accounts that are mostly credited (merchant, fee and settlement accounts), off unless
+ * account.striping.enabled=true and then set per account.
+ * The balance of a striped account is spread across N rows of ACCOUNT_BALANCE_SLOTS so that concurrent
+ * credits lock different rows: each credit lands on a random slot, debits try the ACCOUNTS row and then
+ * walk the slots. The balance is ACCOUNTS.ACCOUNT_BALANCE plus the slots, and the rebalancer periodically
+ * folds the slots back into the ACCOUNTS row.
+ * Balance changes are made on the caller's transaction; enabling and folding use their own.
+ * Striping only helps when callers write their own transactions (account.journal.group-commit.enabled=false)
+ * on a database where a commit holds the row lock for a while. With group commit the single flusher thread
+ * already applies the writes one after another, so there is no row lock to contend for and the slots only add
+ * statements to each batch. Debits still lock the ACCOUNTS row, so an account debited about as often as it is
+ * credited gains little either way.
+ * When striping is disabled, accounts striped before are folded back into their ACCOUNTS row at startup.
+ */
+@Component
+public class StripedBalances {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final String DEBIT_SQL = "UPDATE ACCOUNTS SET ACCOUNT_BALANCE = ACCOUNT_BALANCE - ? " +
+            "WHERE ACCOUNT_ID = ? AND ACCOUNT_BALANCE >= ?";
+    private static final String CREDIT_SQL = "UPDATE ACCOUNTS SET ACCOUNT_BALANCE = ACCOUNT_BALANCE + ? " +
+            "WHERE ACCOUNT_ID = ?";
+    private static final String CREDIT_SLOT_SQL = "UPDATE ACCOUNT_BALANCE_SLOTS SET SLOT_BALANCE = SLOT_BALANCE + ? " +
+            "WHERE ACCOUNT_ID = ? AND SLOT = ?";
+    private static final String DEBIT_SLOT_SQL = "UPDATE ACCOUNT_BALANCE_SLOTS SET SLOT_BALANCE = SLOT_BALANCE - ? " +
+            "WHERE ACCOUNT_ID = ? AND SLOT = ? AND SLOT_BALANCE >= ?";
+    private static final String LOCK_SLOTS_SQL = "SELECT SLOT_BALANCE FROM ACCOUNT_BALANCE_SLOTS " +
+            "WHERE ACCOUNT_ID = ? FOR UPDATE";
+
+    final JdbcTemplate jdbcTemplate;
+    final TransactionTemplate transactionTemplate;
+    final AccountBalanceSlotRepository accountBalanceSlotRepository;
+    final AccountLedger accountLedger;
+    final boolean enabled;
+    final int maxSlots;
+    final boolean groupCommit;
+    private final Map<Long, Integer> slotCounts = new ConcurrentHashMap<>();
+
+    public StripedBalances(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           AccountBalanceSlotRepository accountBalanceSlotRepository, AccountLedger accountLedger,
+                           @Value("${account.striping.enabled:false}") boolean enabled,
+                           @Value("${account.striping.max-slots:64}") int maxSlots,
+                           @Value("${account.journal.group-commit.enabled:true}") boolean groupCommit) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.accountBalanceSlotRepository = accountBalanceSlotRepository;
+        this.accountLedger = accountLedger;
+        this.enabled = enabled;
+        this.maxSlots = maxSlots;
+        this.groupCommit = groupCommit;
+    }
+
+    @PostConstruct
+    void loadStripedAccounts() {
+        jdbcTemplate.query("SELECT ACCOUNT_ID, ACCOUNT_BALANCE_SLOTS FROM ACCOUNTS WHERE ACCOUNT_BALANCE_SLOTS > 0",
+                rs -> {
+                    slotCounts.put(rs.getLong(1), rs.getInt(2));
+                });
+        if (!enabled && !slotCounts.isEmpty()) {
+            log.info("striping disabled, folding the slots of accounts:" + slotCounts.keySet());
+            for (Long accountId : List.copyOf(slotCounts.keySet())) stripe(accountId, 0);
+        }
+        log.info("striped accounts:" + slotCounts);
+    }
+
+    public boolean isStriped(long accountId) {
+        return slotCounts.containsKey(accountId);
+    }
+
+    /**
+     * Credit a random slot. Falls back to the ACCOUNTS row if the slot no longer exists (striping was changed).
+     */
+    boolean credit(long accountId, long amount) {
+        Integer slots = slotCounts.get(accountId);
+        if (slots != null &&
+                jdbcTemplate.update(CREDIT_SLOT_SQL, amount, accountId, ThreadLocalRandom.current().nextInt(slots)) == 1)
+            return true;
+        return jdbcTemplate.update(CREDIT_SQL, amount, accountId) == 1;
+    }
+
+    /**
+     * Debit the ACCOUNTS row or the first slot that can cover the amount. If the funds are only there
+     * when added up, fold the slots into the ACCOUNTS row and try that again.
+     */
+    boolean debit(long accountId, long amount) {
+        if (jdbcTemplate.update(DEBIT_SQL, amount, accountId, amount) == 1) return true;
+        int slots = slotCounts.getOrDefault(accountId, 0);
+        for (int slot = 0; slot < slots; slot++) {
+            if (jdbcTemplate.update(DEBIT_SLOT_SQL, amount, accountId, slot, amount) == 1) return true;
+        }
+        return slots > 0 && foldSlots(accountId) > 0 && jdbcTemplate.update(DEBIT_SQL, amount, accountId, amount) == 1;
+    }
+
+    /**
+     * Move the slot balances into the ACCOUNTS row on the caller's transaction. The slots are locked first
+     * so that no concurrent credit is lost. Returns the amount moved.
+     */
+    long foldSlots(long accountId) {
+        List<Long> slotBalances = jdbcTemplate.queryForList(LOCK_SLOTS_SQL, Long.class, accountId);
+        long total = slotBalances.stream().mapToLong(Long::longValue).sum();
+        if (total == 0) return 0;
+        jdbcTemplate.update(CREDIT_SQL, total, accountId);
+        jdbcTemplate.update("UPDATE ACCOUNT_BALANCE_SLOTS SET SLOT_BALANCE = 0 WHERE ACCOUNT_ID = ?", accountId);
+        return total;
+    }
+
+    /**
+     * Stripe the account balance across the given number of slots (at most account.striping.max-slots),
+     * or stop striping it if 0. Only 0 is accepted while striping is disabled.
+     */
+    public void setSlots(long accountId, int slots) {
+        if (slots < 0 || slots > maxSlots) {
+            throw new IllegalArgumentException("slots must be from 0 to " + maxSlots + ", not " + slots);
+        }
+        if (slots > 0 && !enabled) {
+            throw new IllegalStateException("striping is disabled, set account.striping.enabled=true");
+        }
+        if (slots > 0 && groupCommit) {
+            log.warn("account " + accountId + " striped across " + slots + " slots, which does not spread " +
+                    "the writes while journal group commit is enabled");
+        }
+        stripe(accountId, slots);
+    }
+
+    private void stripe(long accountId, int slots) {
+        transactionTemplate.executeWithoutResult(txStatus -> {
+            jdbcTemplate.queryForList("SELECT ACCOUNT_ID FROM ACCOUNTS WHERE ACCOUNT_ID = ? FOR UPDATE", accountId);
+            foldSlots(accountId);
+            jdbcTemplate.update("DELETE FROM ACCOUNT_BALANCE_SLOTS WHERE ACCOUNT_ID = ?", accountId);
+            for (int slot = 0; slot < slots; slot++) {
+                jdbcTemplate.update("INSERT INTO ACCOUNT_BALANCE_SLOTS (ACCOUNT_ID, SLOT, SLOT_BALANCE) VALUES (?, ?, 0)",
+                        accountId, slot);
+            }
+            jdbcTemplate.update("UPDATE ACCOUNTS SET ACCOUNT_BALANCE_SLOTS = ? WHERE ACCOUNT_ID = ?", slots, accountId);
+        });
+        if (slots > 0) slotCounts.put(accountId, slots);
+        else slotCounts.remove(accountId);
+    }
+
+    /**
+     * Report the summed balance of a striped account, or in ledger mode of any account.
+     */
+    public Account withSummedBalance(Account account) {
+        if (accountLedger.isEnabled()) {
+            Long balance = accountLedger.balance(account.getAccountId());
+            if (balance != null) account.setAccountBalance(balance);
+        } else if (account.getAccountBalanceSlots() > 0) {
+            Long balance = accountBalanceSlotRepository.totalBalance(account.getAccountId());
+            if (balance != null) account.setAccountBalance(balance);
+        }
+        return account;
+    }
+
+    @Scheduled(fixedDelayString = "${account.striping.rebalance-interval-ms:10000}")
+    public void rebalance() {
+        for (Long accountId : slotCounts.keySet()) {
+            transactionTemplate.executeWithoutResult(txStatus -> foldSlots(accountId));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package oracle.examples.cloudbank.services;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serve each request on its own virtual thread instead of the Tomcat worker pool (spring.threads.virtual.enabled).
+ * Requires a Java 21 runtime; the service is built for Java 17 so the executor is looked up reflectively and
+ * the default pool is kept on older runtimes.
+ * The whole request, including the MicroTx LRA filters and the thread-bound LRA context, runs on that one thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            ExecutorService executor = virtualThreadPerTaskExecutor();
+            if (executor != null) protocolHandler.setExecutor(executor);
+        };
+    }
+
+    static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.warn("virtual threads need Java 21, running on " + Runtime.version() + " with platform threads");
+            return null;
+        }
+    }
+}
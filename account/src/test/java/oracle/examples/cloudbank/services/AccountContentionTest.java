@@ -0,0 +1,138 @@
+package oracle.examples.cloudbank.services;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.repository.AccountRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many threads debiting and crediting one account at once, as concurrent transfers on a hot account do.
+ * Checks that no update is lost and that the balance never goes below zero. The throughput of a hot account is
+ * measured by HotAccountBenchmark in the benchmarks module.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:contention;MODE=Oracle;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.type=com.zaxxer.hikari.HikariDataSource",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create",
+        "account.recovery.enabled=false",
+        "account.journal.archive.enabled=false",
+        "account.trace.enabled=false"
+})
+class AccountContentionTest {
+
+    private static final int THREADS = 32;
+    private static final int CALLS_PER_THREAD = 200;
+
+    @Autowired
+    AccountRepository accountRepository;
+
+    @Autowired
+    AccountTransferDAO accountTransferDAO;
+
+    @Test
+    void concurrentDebitsAndCreditsLoseNoUpdates() throws Exception {
+        long initialBalance = 1_000_000;
+        long accountId = createAccount(initialBalance);
+        AtomicInteger debited = new AtomicInteger();
+        AtomicInteger credited = new AtomicInteger();
+
+        hammer((thread, call) -> {
+            String lraId = "contention-" + thread + "-" + call;
+            if ((thread + call) % 2 == 0) {
+                if (accountTransferDAO.debitAccountAndSaveJournal(
+                        new Journal(AccountsWithdrawService.WITHDRAW, accountId, 3, lraId, active()))) {
+                    debited.incrementAndGet();
+                }
+            } else {
+                // a deposit and its completion, as the coordinator drives them
+                accountTransferDAO.saveJournal(
+                        new Journal(AccountsDepositService.DEPOSIT, accountId, 2, lraId, active()));
+                Journal deposit = accountTransferDAO.getJournalForLRAid(lraId, AccountsDepositService.DEPOSIT);
+                if (accountTransferDAO.creditAccountAndSaveJournal(deposit,
+                        ParticipantStatus.Completed, ParticipantStatus.FailedToComplete)) {
+                    credited.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(debited.get() + credited.get()).isEqualTo(THREADS * CALLS_PER_THREAD);
+        assertThat(balance(accountId)).isEqualTo(initialBalance - 3L * debited.get() + 2L * credited.get());
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdraw() throws Exception {
+        long initialBalance = 1_000;
+        long accountId = createAccount(initialBalance);
+        AtomicInteger debited = new AtomicInteger();
+
+        hammer((thread, call) -> {
+            if (accountTransferDAO.debitAccountAndSaveJournal(new Journal(AccountsWithdrawService.WITHDRAW,
+                    accountId, 1, "overdraw-" + thread + "-" + call, active()))) {
+                debited.incrementAndGet();
+            }
+        });
+
+        // more debits than the balance covers, so exactly the balance is taken
+        assertThat(debited.get()).isEqualTo((int) initialBalance);
+        assertThat(balance(accountId)).isZero();
+    }
+
+    private interface Call {
+        void run(int thread, int call) throws Exception;
+    }
+
+    /**
+     * Run CALLS_PER_THREAD calls on each of THREADS threads, all started together
+     */
+    private void hammer(Call call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> threads = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                threads.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) call.run(thread, i);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : threads) future.get(2, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long createAccount(long balance) {
+        Account account = new Account("contention", "checking", "", "contention");
+        account.setAccountBalance(balance);
+        return accountRepository.save(account).getAccountId();
+    }
+
+    private long balance(long accountId) {
+        return accountRepository.findById(accountId).orElseThrow().getAccountBalance();
+    }
+
+    private static String active() {
+        return AccountTransferDAO.getStatusString(ParticipantStatus.Active);
+    }
+}
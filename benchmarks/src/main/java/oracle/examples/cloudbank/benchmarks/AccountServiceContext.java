@@ -0,0 +1,48 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The account service's DAO, journal writer and repositories without the web server, against an in-memory H2
+ * database in Oracle mode. Only the account packages are scanned, the transfer classes on the benchmark classpath
+ * share the root package.
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@ComponentScan("oracle.examples.cloudbank.services")
+@EntityScan("oracle.examples.cloudbank.model")
+@EnableJpaRepositories("oracle.examples.cloudbank.repository")
+public class AccountServiceContext {
+
+    /**
+     * Start a context with its own database, extra settings are given as name=value
+     */
+    public static ConfigurableApplicationContext start(String... settings) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=Oracle",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.type=com.zaxxer.hikari.HikariDataSource",
+                "--spring.datasource.hikari.maximum-pool-size=30",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create"));
+        for (String setting : settings) args.add("--" + setting);
+        return new SpringApplicationBuilder(AccountServiceContext.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+    }
+}
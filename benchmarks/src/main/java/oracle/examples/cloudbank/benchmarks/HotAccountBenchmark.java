@@ -0,0 +1,72 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.repository.AccountRepository;
+import oracle.examples.cloudbank.services.AccountTransferDAO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Withdrawals and completed deposits on a single hot account at once, half the threads each, as concurrent
+ * transfers in and out of one account do. AccountContentionTest checks the same calls for lost updates, this
+ * measures how many the account takes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Group)
+public class HotAccountBenchmark {
+
+    @Param({"false", "true"})
+    String groupCommit;
+
+    ConfigurableApplicationContext context;
+    AccountTransferDAO dao;
+    long accountId;
+    AtomicLong lraCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = AccountServiceContext.start("account.journal.group-commit.enabled=" + groupCommit);
+        dao = context.getBean(AccountTransferDAO.class);
+        Account account = new Account("hot", "checking", null, "benchmark");
+        // enough that the withdrawals never run out during a run
+        account.setAccountBalance(Long.MAX_VALUE / 2);
+        accountId = context.getBean(AccountRepository.class).save(account).getAccountId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Group("hotAccount")
+    @GroupThreads(8)
+    public boolean withdraw() {
+        return dao.debitAccountAndSaveJournal(journal("WITHDRAW"));
+    }
+
+    @Benchmark
+    @Group("hotAccount")
+    @GroupThreads(8)
+    public boolean depositThenComplete() {
+        Journal journal = journal("DEPOSIT");
+        dao.saveJournal(journal);
+        return dao.creditAccountAndSaveJournal(journal, ParticipantStatus.Completed,
+                ParticipantStatus.FailedToComplete);
+    }
+
+    private Journal journal(String type) {
+        return new Journal(type, accountId, 1,
+                "http://localhost:9000/api/v1/lra-coordinator/benchmark-" + lraCounter.incrementAndGet(),
+                AccountTransferDAO.getStatusString(ParticipantStatus.Active));
+    }
+}
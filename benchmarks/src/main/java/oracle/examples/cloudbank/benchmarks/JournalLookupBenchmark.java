@@ -0,0 +1,55 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.services.AccountTransferDAO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The participant status callback, which looks up the journal entry of the LRA: from the participant state cache,
+ * or with the cache disabled from the JOURNAL table by its LRA_ID, JOURNAL_TYPE index.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class JournalLookupBenchmark {
+
+    private static final int JOURNALS = 10000;
+
+    @Param({"10000", "0"})
+    String cacheMaxSize;
+
+    ConfigurableApplicationContext context;
+    AccountTransferDAO dao;
+    String[] lraIds = new String[JOURNALS];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = AccountServiceContext.start("account.journal.cache.max-size=" + cacheMaxSize);
+        dao = context.getBean(AccountTransferDAO.class);
+        for (int i = 0; i < JOURNALS; i++) {
+            lraIds[i] = "http://localhost:9000/api/v1/lra-coordinator/benchmark-" + i;
+            dao.saveJournal(new Journal("WITHDRAW", 1, 1, lraIds[i],
+                    AccountTransferDAO.getStatusString(ParticipantStatus.Active)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> status() throws Exception {
+        return dao.status(lraIds[ThreadLocalRandom.current().nextInt(JOURNALS)], "WITHDRAW");
+    }
+}
@@ -0,0 +1,81 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.repository.AccountRepository;
+import oracle.examples.cloudbank.services.AccountTransferDAO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The DAO writes of a withdraw followed by its compensation, and of a deposit followed by its completion,
+ * with and without the journal group commit. Run with several threads since group commit only pays off when
+ * callers overlap.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class JournalWriteBenchmark {
+
+    private static final int ACCOUNTS = 64;
+
+    @Param({"true", "false"})
+    String groupCommit;
+
+    ConfigurableApplicationContext context;
+    AccountTransferDAO dao;
+    long[] accountIds = new long[ACCOUNTS];
+    AtomicLong lraCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = AccountServiceContext.start("account.journal.group-commit.enabled=" + groupCommit);
+        dao = context.getBean(AccountTransferDAO.class);
+        AccountRepository accountRepository = context.getBean(AccountRepository.class);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = new Account("benchmark-" + i, "checking", null, "benchmark");
+            account.setAccountBalance(Long.MAX_VALUE / 4);
+            accountIds[i] = accountRepository.save(account).getAccountId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean withdrawThenCompensate() {
+        Journal journal = new Journal("WITHDRAW", randomAccount(), 1, nextLraId(),
+                AccountTransferDAO.getStatusString(ParticipantStatus.Active));
+        dao.debitAccountAndSaveJournal(journal);
+        return dao.creditAccountAndSaveJournal(journal, ParticipantStatus.Compensated,
+                ParticipantStatus.FailedToCompensate);
+    }
+
+    @Benchmark
+    public boolean depositThenComplete() {
+        Journal journal = new Journal("DEPOSIT", randomAccount(), 1, nextLraId(),
+                AccountTransferDAO.getStatusString(ParticipantStatus.Active));
+        dao.saveJournal(journal);
+        return dao.creditAccountAndSaveJournal(journal, ParticipantStatus.Completed,
+                ParticipantStatus.FailedToComplete);
+    }
+
+    private long randomAccount() {
+        return accountIds[ThreadLocalRandom.current().nextInt(ACCOUNTS)];
+    }
+
+    private String nextLraId() {
+        return "http://localhost:9000/api/v1/lra-coordinator/benchmark-" + lraCounter.incrementAndGet();
+    }
+}
@@ -0,0 +1,63 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.model.Journal;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account and Journal JSON as written and read by the admin endpoints, with an ObjectMapper configured the way
+ * Spring MVC configures its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonBenchmark {
+
+    ObjectMapper objectMapper;
+    Account account;
+    Journal journal;
+    String accountJson;
+    String journalJson;
+
+    @Setup
+    public void setup() throws Exception {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        account = new Account("alice", "checking", "benchmark account", "customer-42");
+        account.setAccountId(42);
+        account.setAccountBalance(1000);
+        account.setAccountOpenedDate(new Date());
+        journal = new Journal("WITHDRAW", 42, 10,
+                "http://tmm-app:9000/api/v1/lra-coordinator/0b1c1a0e-3f0c-4a51-9c1f-4c7a1f3b2e5d", "Active");
+        journal.setJournalId(4242);
+        accountJson = objectMapper.writeValueAsString(account);
+        journalJson = objectMapper.writeValueAsString(journal);
+    }
+
+    @Benchmark
+    public String writeAccount() throws Exception {
+        return objectMapper.writeValueAsString(account);
+    }
+
+    @Benchmark
+    public Account readAccount() throws Exception {
+        return objectMapper.readValue(accountJson, Account.class);
+    }
+
+    @Benchmark
+    public String writeJournal() throws Exception {
+        return objectMapper.writeValueAsString(journal);
+    }
+
+    @Benchmark
+    public Journal readJournal() throws Exception {
+        return objectMapper.readValue(journalJson, Journal.class);
+    }
+}
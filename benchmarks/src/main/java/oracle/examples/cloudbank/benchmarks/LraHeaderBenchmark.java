@@ -0,0 +1,44 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call handling of the Long-Running-Action header value: TransferService parses it into a URI and builds
+ * each participant URI with UriComponentsBuilder, and the LRA uid is the last path segment of the header.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LraHeaderBenchmark {
+
+    String lraId = "http://tmm-app:9000/api/v1/lra-coordinator/0b1c1a0e-3f0c-4a51-9c1f-4c7a1f3b2e5d";
+    URI withdrawUri = URI.create("http://account.application:8080/withdraw/withdraw");
+    long accountId = 42;
+    long amount = 10;
+
+    @Benchmark
+    public URI parseLraId() throws Exception {
+        return new URI(lraId);
+    }
+
+    @Benchmark
+    public String lraUid() {
+        return lraId.substring(lraId.lastIndexOf('/') + 1);
+    }
+
+    @Benchmark
+    public URI participantUri() {
+        return UriComponentsBuilder.fromUri(withdrawUri)
+                .queryParam("accountId", accountId)
+                .queryParam("amount", amount)
+                .build()
+                .toUri();
+    }
+}
@@ -0,0 +1,39 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.services.AccountTransferDAO;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The journal LRA_STATE column is converted to and from ParticipantStatus on every participant callback.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatusStringBenchmark {
+
+    @Param({"Active", "Completed", "Compensated", "Failed to Compensate"})
+    String statusString;
+
+    ParticipantStatus status;
+
+    @Setup
+    public void setup() {
+        status = AccountTransferDAO.getStatusFromString(statusString);
+    }
+
+    @Benchmark
+    public String getStatusString() {
+        return AccountTransferDAO.getStatusString(status);
+    }
+
+    @Benchmark
+    public ParticipantStatus getStatusFromString() {
+        return AccountTransferDAO.getStatusFromString(statusString);
+    }
+}
@@ -0,0 +1,64 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import com.oracle.microtx.springboot.lra.annotation.ParticipantStatus;
+import oracle.examples.cloudbank.model.Account;
+import oracle.examples.cloudbank.model.Journal;
+import oracle.examples.cloudbank.repository.AccountRepository;
+import oracle.examples.cloudbank.services.AccountTransferDAO;
+import oracle.examples.cloudbank.services.StripedBalances;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deposit completions on a single hot account as the number of balance slots grows (0 is not striped).
+ * With group commit the flusher applies the writes one at a time whatever the slots, so the groupCommit=true
+ * rows are the baseline that striping does not change.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class StripedCompletionBenchmark {
+
+    @Param({"0", "1", "4", "16"})
+    int slots;
+
+    @Param({"false", "true"})
+    String groupCommit;
+
+    ConfigurableApplicationContext context;
+    AccountTransferDAO dao;
+    long accountId;
+    AtomicLong lraCounter = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = AccountServiceContext.start("account.striping.enabled=true",
+                "account.journal.group-commit.enabled=" + groupCommit);
+        dao = context.getBean(AccountTransferDAO.class);
+        Account account = new Account("hot", "checking", null, "benchmark");
+        accountId = context.getBean(AccountRepository.class).save(account).getAccountId();
+        context.getBean(StripedBalances.class).setSlots(accountId, slots);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean depositThenComplete() {
+        Journal journal = new Journal("DEPOSIT", accountId, 1,
+                "http://localhost:9000/api/v1/lra-coordinator/benchmark-" + lraCounter.incrementAndGet(),
+                AccountTransferDAO.getStatusString(ParticipantStatus.Active));
+        dao.saveJournal(journal);
+        return dao.creditAccountAndSaveJournal(journal, ParticipantStatus.Completed,
+                ParticipantStatus.FailedToComplete);
+    }
+}
@@ -0,0 +1,40 @@
+package oracle.examples.cloudbank.benchmarks;
+
+import oracle.examples.cloudbank.TransferOutcome;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome strings TransferService builds and inspects for each transfer, for a closed transfer and for
+ * one cancelled because the withdraw or the deposit failed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransferOutcomeBenchmark {
+
+    @Param({"closed", "withdrawFailed", "depositFailed"})
+    String scenario;
+
+    String withdrawOutcome;
+    String depositOutcome;
+
+    @Setup
+    public void setup() {
+        withdrawOutcome = scenario.equals("withdrawFailed") ? "withdraw failed: insufficient funds" : "withdraw succeeded";
+        depositOutcome = scenario.equals("depositFailed") ? "deposit failed: account does not exist" : "deposit succeeded";
+    }
+
+    @Benchmark
+    public String transferStatus(Blackhole blackhole) {
+        String outcome = withdrawOutcome;
+        if (TransferOutcome.succeeded(outcome)) outcome = TransferOutcome.combine(outcome, depositOutcome);
+        blackhole.consume(TransferOutcome.isCompensate(outcome));
+        return TransferOutcome.status(outcome);
+    }
+}
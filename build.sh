@@ -20,7 +20,7 @@ IMAGE_VERSION=0.1
 
 cd account
 mvn  clean
-mvn  -Dmaven.test.skip=true package
+mvn  -Pfast-startup -Dmaven.test.skip=true package
 docker image build -t=account .
 IMAGE_NAME=account
 export IMAGE=${DOCKER_REGISTRY}/cloudbank/${IMAGE_NAME}:${IMAGE_VERSION}
@@ -30,7 +30,7 @@ cd ../
 
 cd transfer
 mvn  clean
-mvn  -Dmaven.test.skip=true package
+mvn  -Pfast-startup -Dmaven.test.skip=true package
 docker image build -t=transfer .
 IMAGE_NAME=transfer
 export IMAGE=${DOCKER_REGISTRY}/${IMAGE_NAME}:${IMAGE_VERSION}
@@ -0,0 +1,48 @@
+package oracle.examples.cloudbank.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks account ids with a zipf distribution over their rank: rank k is chosen with probability proportional
+ * to 1/k^skew. A skew of 0 is uniform, larger values send more of the traffic to the first few accounts.
+ */
+public class AccountSkew {
+
+    private final long[] accountIds;
+    private final double[] cumulative;
+
+    public AccountSkew(long[] accountIds, double skew) {
+        this.accountIds = accountIds;
+        this.cumulative = new double[accountIds.length];
+        double total = 0;
+        for (int rank = 0; rank < accountIds.length; rank++) {
+            total += 1 / Math.pow(rank + 1, skew);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    public long[] accountIds() {
+        return accountIds;
+    }
+
+    public long next() {
+        int rank = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        if (rank < 0) rank = -rank - 1;
+        return accountIds[Math.min(rank, accountIds.length - 1)];
+    }
+
+    /**
+     * A different account from the given one, there must be at least two accounts
+     */
+    public long nextOtherThan(long accountId) {
+        long next;
+        do {
+            next = next();
+        } while (next == accountId);
+        return next;
+    }
+}
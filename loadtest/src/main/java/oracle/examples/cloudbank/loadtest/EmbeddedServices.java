@@ -0,0 +1,285 @@
+package oracle.examples.cloudbank.loadtest;
+
+import jakarta.annotation.PreDestroy;
+import org.h2.tools.Server;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+/**
+ * Runs the account and transfer services from their boot jars as child processes, the account service against
+ * an in-memory H2 database in Oracle mode served from this process, and both of them against the stub coordinator.
+ * The H2 driver is added to the account service's classpath with the boot PropertiesLauncher's loader.path.
+ * With fast-startup the jars of the fast-startup build are run instead, with Spring AOT and a class data sharing
+ * archive that a training run writes to the log directory whenever the jar is newer than the archive. Their
+ * images do not have H2, so it is put after the jar on the classpath, the same in the training run and the run.
+ * The time from launching the services until they report healthy is measured.
+ * Extra settings given to start are passed to both services, for comparing runs with different settings.
+ */
+@Component
+public class EmbeddedServices {
+
+    private static final Logger log = Logger.getLogger(EmbeddedServices.class.getSimpleName());
+
+    private final boolean launch;
+    private final boolean fastStartup;
+    private final boolean localTransfers;
+    private final String accountJar;
+    private final String transferJar;
+    private final String jvmOptions;
+    private final String accountUrl;
+    private final String transferUrl;
+    private final String coordinatorUrl;
+    private final int startupTimeoutSeconds;
+    private final String logDir;
+    private final int databasePort;
+    private final String databaseUrl;
+    private final List<Process> processes = new ArrayList<>();
+    private Server databaseServer;
+    private long startupMillis;
+
+    public EmbeddedServices(@Value("${loadtest.services.launch:true}") boolean launch,
+                            @Value("${loadtest.services.fast-startup:false}") boolean fastStartup,
+                            @Value("${loadtest.services.account-jar}") String accountJar,
+                            @Value("${loadtest.services.transfer-jar}") String transferJar,
+                            @Value("${loadtest.services.account-fast-startup-jar}") String accountFastStartupJar,
+                            @Value("${loadtest.services.transfer-fast-startup-jar}") String transferFastStartupJar,
+                            @Value("${loadtest.services.jvm-options:}") String jvmOptions,
+                            @Value("${loadtest.services.local-transfers:false}") boolean localTransfers,
+                            @Value("${loadtest.services.account-url}") String accountUrl,
+                            @Value("${loadtest.services.transfer-url}") String transferUrl,
+                            @Value("${loadtest.services.startup-timeout-seconds:120}") int startupTimeoutSeconds,
+                            @Value("${loadtest.services.log-dir:target/services}") String logDir,
+                            @Value("${loadtest.database.port}") int databasePort,
+                            @Value("${loadtest.database.url}") String databaseUrl,
+                            @Value("${server.port}") int coordinatorPort) {
+        this.launch = launch;
+        this.fastStartup = fastStartup;
+        this.accountJar = fastStartup ? accountFastStartupJar : accountJar;
+        this.transferJar = fastStartup ? transferFastStartupJar : transferJar;
+        this.jvmOptions = jvmOptions;
+        this.localTransfers = localTransfers;
+        this.accountUrl = accountUrl;
+        this.transferUrl = transferUrl;
+        this.startupTimeoutSeconds = startupTimeoutSeconds;
+        this.logDir = logDir;
+        this.databasePort = databasePort;
+        this.databaseUrl = databaseUrl;
+        this.coordinatorUrl = "http://localhost:" + coordinatorPort + "/api/v1/lra-coordinator";
+    }
+
+    public String accountUrl() {
+        return accountUrl;
+    }
+
+    public String transferUrl() {
+        return transferUrl;
+    }
+
+    /**
+     * Time from launching the services until both were healthy, 0 if they were already running
+     */
+    public long startupMillis() {
+        return startupMillis;
+    }
+
+    public boolean launches() {
+        return launch;
+    }
+
+    public void start() throws Exception {
+        start(List.of());
+    }
+
+    /**
+     * Start the services with these settings (--name=value) in addition to their own
+     */
+    public void start(List<String> serviceArgs) throws Exception {
+        if (!launch) {
+            log.info("Using services already running at " + accountUrl + " and " + transferUrl);
+            return;
+        }
+        databaseServer = Server.createTcpServer("-tcpPort", String.valueOf(databasePort), "-ifNotExists").start();
+        log.info("H2 listening on " + databaseServer.getURL());
+        Files.createDirectories(Paths.get(logDir));
+        List<String> accountArgs = new ArrayList<>(List.of(
+                "--server.port=" + URI.create(accountUrl).getPort(),
+                "--spring.microtx.lra.coordinator-url=" + coordinatorUrl,
+                "--spring.microtx.lra.participant-url=" + accountUrl,
+                "--spring.datasource.url=" + databaseUrl,
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.hibernate.ddl-auto=create"));
+        accountArgs.addAll(serviceArgs);
+        // the AOT build has the UCP pool built in, so it reaches H2 through UCP
+        if (fastStartup) accountArgs.add("--spring.datasource.oracleucp.connection-factory-class-name=org.h2.jdbcx.JdbcDataSource");
+        else accountArgs.addAll(List.of("--spring.datasource.type=com.zaxxer.hikari.HikariDataSource",
+                "--spring.datasource.hikari.maximum-pool-size=30"));
+        List<String> transferArgs = new ArrayList<>(List.of(
+                "--server.port=" + URI.create(transferUrl).getPort(),
+                "--spring.microtx.lra.coordinator-url=" + coordinatorUrl,
+                "--spring.microtx.lra.participant-url=" + transferUrl,
+                "--account.withdraw.url=" + accountUrl + "/withdraw/withdraw",
+                "--account.deposit.url=" + accountUrl + "/deposit/deposit",
+                "--transfer.url=" + transferUrl + "/transfer",
+                "--transfer.cancel.url=" + transferUrl + "/cancel",
+                "--transfer.cancel.process.url=" + transferUrl + "/processcancel",
+                "--transfer.confirm.url=" + transferUrl + "/close",
+                "--transfer.confirm.process.url=" + transferUrl + "/processclose",
+                "--transfer.local.enabled=" + localTransfers));
+        transferArgs.addAll(serviceArgs);
+        String h2Jar = h2Jar();
+        if (fastStartup) {
+            train("account", accountJar, h2Jar, accountArgs);
+            train("transfer", transferJar, null, transferArgs);
+        }
+        long launchedAt = System.nanoTime();
+        processes.add(launch("account", accountJar, h2Jar,
+                fastStartup ? fastStartupOptions("account") : List.of(), accountArgs));
+        processes.add(launch("transfer", transferJar, null,
+                fastStartup ? fastStartupOptions("transfer") : List.of(), transferArgs));
+        long accountMillis = awaitHealthy(accountUrl, launchedAt);
+        startupMillis = awaitHealthy(transferUrl, launchedAt);
+        log.info("account healthy " + accountMillis + "ms and transfer " + startupMillis + "ms after launch" +
+                (fastStartup ? " (fast startup)" : ""));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        // the next run starts on the same ports
+        for (Process process : processes) {
+            if (!process.waitFor(30, TimeUnit.SECONDS)) process.destroyForcibly().waitFor();
+        }
+        processes.clear();
+        if (databaseServer != null) {
+            databaseServer.stop();
+            databaseServer = null;
+        }
+    }
+
+    /**
+     * Start the jar, with extraClassPath (or null) after it on the classpath: through loader.path for a boot jar,
+     * and for a fast-startup jar by running its main class from a classpath of the jar and extraClassPath
+     */
+    private Process launch(String name, String jar, String extraClassPath, List<String> systemProperties,
+                           List<String> args) throws IOException {
+        if (!new File(jar).isFile())
+            throw new IllegalStateException(name + " jar " + jar + " not found, build the " + name + " module first" +
+                    (fastStartup ? " with -Pfast-startup" : ""));
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (!jvmOptions.isBlank()) command.addAll(Arrays.asList(jvmOptions.trim().split("\\s+")));
+        command.addAll(systemProperties);
+        if (!fastStartup) {
+            if (extraClassPath != null) command.add("-Dloader.path=" + extraClassPath);
+            command.addAll(List.of("-cp", jar, "org.springframework.boot.loader.PropertiesLauncher"));
+        } else if (extraClassPath != null) {
+            command.addAll(List.of("-cp", jar + File.pathSeparator + extraClassPath, mainClass(jar)));
+        } else {
+            command.addAll(List.of("-jar", jar));
+        }
+        command.addAll(args);
+        File logFile = Paths.get(logDir, name + ".log").toFile();
+        log.info("Starting " + name + ", output in " + logFile);
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(logFile).start();
+    }
+
+    private static String mainClass(String jar) throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            return jarFile.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+        }
+    }
+
+    private List<String> fastStartupOptions(String name) {
+        return List.of("-XX:SharedArchiveFile=" + archive(name), "-Dspring.aot.enabled=true");
+    }
+
+    private Path archive(String name) {
+        return Paths.get(logDir, name + ".jsa");
+    }
+
+    /**
+     * Write the class data sharing archive of a fast-startup jar with a training run that exits once started,
+     * unless the archive is newer than the jar
+     */
+    private void train(String name, String jar, String extraClassPath, List<String> args) throws Exception {
+        Path archive = archive(name);
+        if (Files.exists(archive) &&
+                Files.getLastModifiedTime(archive).compareTo(Files.getLastModifiedTime(Paths.get(jar))) > 0) return;
+        Files.deleteIfExists(archive);
+        List<String> trainingArgs = new ArrayList<>(args);
+        trainingArgs.add("--startup.training-run=true");
+        Process process = launch(name + "-training", jar, extraClassPath,
+                List.of("-XX:ArchiveClassesAtExit=" + archive, "-Dspring.aot.enabled=true"), trainingArgs);
+        if (!process.waitFor(startupTimeoutSeconds, TimeUnit.SECONDS)) {
+            process.destroy();
+            throw new IllegalStateException(name + " training run did not finish within " + startupTimeoutSeconds + "s");
+        }
+        if (!Files.exists(archive))
+            log.warning(name + " training run wrote no archive, starting without one, see the logs in " + logDir);
+    }
+
+    /**
+     * The H2 jar on this process's classpath, copied out of the boot jar when running from one. A copy is kept
+     * across runs, as a class data sharing archive is only used with the jars it was written with.
+     */
+    private String h2Jar() throws Exception {
+        String location = org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        if (location.startsWith("file:")) return new File(URI.create(location)).getPath();
+        // jar:file:/.../loadtest.jar!/BOOT-INF/lib/h2-<version>.jar!/
+        String[] parts = location.substring("jar:".length()).split("!/");
+        Path h2Jar = Paths.get(logDir, parts[1].substring(parts[1].lastIndexOf('/') + 1));
+        if (Files.exists(h2Jar)) return h2Jar.toString();
+        try (JarFile bootJar = new JarFile(new File(URI.create(parts[0])));
+             InputStream in = bootJar.getInputStream(bootJar.getJarEntry(parts[1]))) {
+            Files.copy(in, h2Jar);
+        }
+        return h2Jar.toString();
+    }
+
+    /**
+     * Wait until the service reports healthy, returns the time since launchedAt
+     */
+    private long awaitHealthy(String serviceUrl, long launchedAt) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(serviceUrl + "/actuator/health")).GET().build();
+        long deadline = System.currentTimeMillis() + startupTimeoutSeconds * 1000L;
+        while (System.currentTimeMillis() < deadline) {
+            for (Process process : processes) {
+                if (!process.isAlive())
+                    throw new IllegalStateException("a service exited during startup, see the logs in " + logDir);
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200)
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchedAt);
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException(serviceUrl + " did not become healthy within " + startupTimeoutSeconds + "s");
+    }
+}
@@ -0,0 +1,318 @@
+package oracle.examples.cloudbank.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Component;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Drives POST /transfer at a fixed open-loop rate: each transfer has an intended start time on a fixed schedule
+ * and its latency is measured from that time, so a slow response delays the measurement of the ones queued
+ * behind it rather than the load (no coordinated omission).
+ * The from and to accounts are picked with the configured skew. After a warmup the run reports latency percentiles,
+ * achieved throughput and how many transfers were compensated, and writes the full distribution to latency.hgrm.
+ * Before the warmup a single transfer is timed, which with the startup time of launched services gives the time
+ * to first transfer (not counting account creation).
+ * The total balance is read once the account service has applied the compensations it accepted (202 Compensating)
+ * and queued, waiting up to compensation-timeout-seconds for them.
+ * With loadtest.compare the whole run is repeated for each variant, "name: --setting=value ..." separated by ';',
+ * with the services restarted with the variant's settings, and the variants are reported side by side.
+ */
+@Component
+public class LoadDriver implements CommandLineRunner {
+
+    private static final Logger log = Logger.getLogger(LoadDriver.class.getSimpleName());
+    private static final long INITIAL_BALANCE = 1000;
+
+    private final EmbeddedServices services;
+    private final StubLRACoordinator coordinator;
+    private final int ratePerSecond;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final String transferPath;
+    private final long amount;
+    private final int accounts;
+    private final double skew;
+    private final int requestTimeoutMs;
+    private final int compensationTimeoutSeconds;
+    private final String logDir;
+    private final String compare;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public LoadDriver(EmbeddedServices services, StubLRACoordinator coordinator,
+                      @Value("${loadtest.rate-per-second}") int ratePerSecond,
+                      @Value("${loadtest.warmup-seconds}") int warmupSeconds,
+                      @Value("${loadtest.duration-seconds}") int durationSeconds,
+                      @Value("${loadtest.transfer-path:/transfer}") String transferPath,
+                      @Value("${loadtest.amount}") long amount,
+                      @Value("${loadtest.accounts}") int accounts,
+                      @Value("${loadtest.skew:0}") double skew,
+                      @Value("${loadtest.request-timeout-ms:30000}") int requestTimeoutMs,
+                      @Value("${loadtest.compensation-timeout-seconds:60}") int compensationTimeoutSeconds,
+                      @Value("${loadtest.client-threads:8}") int clientThreads,
+                      @Value("${loadtest.services.log-dir:target/services}") String logDir,
+                      @Value("${loadtest.compare:}") String compare) {
+        this.services = services;
+        this.coordinator = coordinator;
+        this.ratePerSecond = ratePerSecond;
+        this.warmupSeconds = warmupSeconds;
+        this.durationSeconds = durationSeconds;
+        this.transferPath = transferPath;
+        this.amount = amount;
+        this.accounts = accounts;
+        this.skew = skew;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.compensationTimeoutSeconds = compensationTimeoutSeconds;
+        this.logDir = logDir;
+        this.compare = compare;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(clientThreads))
+                .build();
+    }
+
+    record Variant(String name, List<String> serviceArgs) {
+    }
+
+    record Summary(String name, double throughput, double compensatedPercent, long errors,
+                   double p50, double p99, double p999, double max) {
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        if (compare.isBlank()) {
+            measure(new Variant("", List.of()));
+            return;
+        }
+        if (!services.launches())
+            throw new IllegalStateException("loadtest.compare restarts the services, it needs loadtest.services.launch");
+        List<Summary> summaries = new ArrayList<>();
+        for (Variant variant : variants()) {
+            System.out.printf("%n%s: %s%n", variant.name(), String.join(" ", variant.serviceArgs()));
+            summaries.add(measure(variant));
+        }
+        System.out.printf("%n%-24s %12s %12s %8s %10s %10s %10s %10s%n", "", "completed/s", "compensated",
+                "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Summary summary : summaries) {
+            System.out.printf("%-24s %12.1f %11.2f%% %8d %10.2f %10.2f %10.2f %10.2f%n", summary.name(),
+                    summary.throughput(), summary.compensatedPercent(), summary.errors(), summary.p50(),
+                    summary.p99(), summary.p999(), summary.max());
+        }
+        System.out.println();
+    }
+
+    private List<Variant> variants() {
+        List<Variant> variants = new ArrayList<>();
+        for (String variant : compare.split(";")) {
+            if (variant.isBlank()) continue;
+            int colon = variant.indexOf(':');
+            if (colon < 1) throw new IllegalArgumentException("loadtest.compare variant \"" + variant.trim() +
+                    "\" is not name: --setting=value ...");
+            String settings = variant.substring(colon + 1).trim();
+            variants.add(new Variant(variant.substring(0, colon).trim(),
+                    settings.isEmpty() ? List.of() : Arrays.asList(settings.split("\\s+"))));
+        }
+        return variants;
+    }
+
+    /**
+     * One run: start the services with the variant's settings, create the accounts, warm up, measure and report
+     */
+    private Summary measure(Variant variant) throws Exception {
+        try {
+            services.start(variant.serviceArgs());
+            AccountSkew accountSkew = new AccountSkew(createAccounts(), skew);
+            long firstTransferMillis = firstTransfer(accountSkew);
+            if (services.startupMillis() > 0) {
+                System.out.printf("%nstartup        %10d ms until both services were healthy%n", services.startupMillis());
+                System.out.printf("first transfer %10d ms  (time to first transfer %d ms)%n", firstTransferMillis,
+                        services.startupMillis() + firstTransferMillis);
+            } else System.out.printf("%nfirst transfer %10d ms%n", firstTransferMillis);
+            if (warmupSeconds > 0) {
+                log.info("Warming up for " + warmupSeconds + "s at " + ratePerSecond + "/s");
+                drive(accountSkew, warmupSeconds, new Recorder(3), new Outcomes());
+            }
+            long cancelledBefore = coordinator.cancelled();
+            long participantFailuresBefore = coordinator.participantFailures();
+            log.info("Measuring for " + durationSeconds + "s at " + ratePerSecond + "/s, skew " + skew);
+            Recorder recorder = new Recorder(3);
+            Outcomes outcomes = new Outcomes();
+            long elapsedNanos = drive(accountSkew, durationSeconds, recorder, outcomes);
+            awaitCompensations();
+            return report(variant.name(), recorder.getIntervalHistogram(), outcomes, elapsedNanos,
+                    coordinator.cancelled() - cancelledBefore,
+                    coordinator.participantFailures() - participantFailuresBefore,
+                    totalBalance(accountSkew));
+        } finally {
+            services.stop();
+        }
+    }
+
+    private long[] createAccounts() throws Exception {
+        long[] accountIds = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            String account = "{\"accountName\":\"loadtest-" + i + "\",\"accountType\":\"checking\"," +
+                    "\"accountCustomerId\":\"loadtest-" + i + "\"}";
+            HttpRequest request = HttpRequest.newBuilder(
+                            URI.create(services.accountUrl() + "/api/v1/createAccountWith1000Balance"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(account))
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 201)
+                throw new IllegalStateException("creating account returned " + response.statusCode());
+            accountIds[i] = objectMapper.readTree(response.body()).get("accountId").asLong();
+        }
+        log.info("Created " + accounts + " accounts");
+        return accountIds;
+    }
+
+    private long firstTransfer(AccountSkew accountSkew) throws Exception {
+        long fromAccount = accountSkew.next();
+        long start = System.nanoTime();
+        HttpResponse<String> response = httpClient.send(transferRequest(fromAccount, accountSkew.nextOtherThan(fromAccount)),
+                HttpResponse.BodyHandlers.ofString());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (response.statusCode() / 100 != 2)
+            throw new IllegalStateException("first transfer returned " + response.statusCode() + ": " + response.body());
+        return elapsedMillis;
+    }
+
+    private HttpRequest transferRequest(long fromAccount, long toAccount) {
+        return HttpRequest.newBuilder(URI.create(services.transferUrl() + transferPath +
+                        "?fromAccount=" + fromAccount + "&toAccount=" + toAccount + "&amount=" + amount))
+                .timeout(Duration.ofMillis(requestTimeoutMs))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    /**
+     * Start transfers on schedule for the given time and wait for the last of them, returns the elapsed time
+     */
+    private long drive(AccountSkew accountSkew, int seconds, Recorder recorder, Outcomes outcomes) {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        long count = (long) seconds * ratePerSecond;
+        AtomicLong inFlight = new AtomicLong();
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            long fromAccount = accountSkew.next();
+            HttpRequest request = transferRequest(fromAccount, accountSkew.nextOtherThan(fromAccount));
+            inFlight.incrementAndGet();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, e) -> {
+                recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+                outcomes.record(response, e);
+                inFlight.decrementAndGet();
+            });
+        }
+        while (inFlight.get() > 0) LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Wait until no compensation is queued or being applied by the account service (account.compensation.pending)
+     */
+    private void awaitCompensations() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create(services.accountUrl() + "/actuator/metrics/account.compensation.pending"))
+                .GET()
+                .build();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(compensationTimeoutSeconds);
+        while (true) {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                log.warning("account.compensation.pending returned " + response.statusCode() +
+                        ", reading the balances without waiting for compensations");
+                return;
+            }
+            long pending = objectMapper.readTree(response.body()).get("measurements").get(0).get("value").asLong();
+            if (pending == 0) return;
+            if (System.nanoTime() > deadline) {
+                log.warning(pending + " compensations still pending after " + compensationTimeoutSeconds +
+                        "s, the total balance will be short");
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    private long totalBalance(AccountSkew accountSkew) throws Exception {
+        long total = 0;
+        for (long accountId : accountSkew.accountIds()) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(services.accountUrl() + "/api/v1/account/" + accountId))
+                    .GET()
+                    .build();
+            total += objectMapper.readTree(httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body())
+                    .get("accountBalance").asLong();
+        }
+        return total;
+    }
+
+    private Summary report(String name, Histogram histogram, Outcomes outcomes, long elapsedNanos, long cancelled,
+                           long participantFailures, long totalBalance) throws Exception {
+        long completed = outcomes.closed.get() + outcomes.compensated.get();
+        double seconds = elapsedNanos / 1e9;
+        double compensatedPercent = completed == 0 ? 0 : 100.0 * outcomes.compensated.get() / completed;
+        System.out.printf("%n%d transfers in %.1fs at a target of %d/s (%s, skew %.2f over %d accounts)%n",
+                histogram.getTotalCount(), seconds, ratePerSecond, transferPath, skew, accounts);
+        System.out.printf("throughput     %10.1f/s completed%n", completed / seconds);
+        System.out.printf("closed         %10d%n", outcomes.closed.get());
+        System.out.printf("compensated    %10d  (%.2f%%, %d LRAs cancelled at the coordinator)%n",
+                outcomes.compensated.get(), compensatedPercent, cancelled);
+        System.out.printf("errors         %10d%n", outcomes.errors.get());
+        System.out.printf("participant callback failures %d%n", participantFailures);
+        System.out.printf("total balance  %10d  (expected %d)%n", totalBalance, INITIAL_BALANCE * accounts);
+        System.out.printf("latency ms     p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n%n",
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+        Files.createDirectories(Paths.get(logDir));
+        String histogramFile = name.isEmpty() ? "latency.hgrm" : "latency-" + name + ".hgrm";
+        try (PrintStream out = new PrintStream(new FileOutputStream(Paths.get(logDir, histogramFile).toFile()))) {
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+        return new Summary(name, completed / seconds, compensatedPercent, outcomes.errors.get(),
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+
+    /**
+     * Transfer responses: "transfer status:withdraw succeeded deposit succeeded" is closed, a 2xx response with a
+     * failed withdraw or deposit is compensated, anything else is an error.
+     */
+    private static class Outcomes {
+        final AtomicLong closed = new AtomicLong();
+        final AtomicLong compensated = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+
+        void record(HttpResponse<String> response, Throwable e) {
+            if (e != null || response.statusCode() / 100 != 2) errors.incrementAndGet();
+            else if (response.body().contains("failed")) compensated.incrementAndGet();
+            else closed.incrementAndGet();
+        }
+    }
+}
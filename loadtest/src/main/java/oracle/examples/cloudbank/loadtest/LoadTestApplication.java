@@ -0,0 +1,15 @@
+package oracle.examples.cloudbank.loadtest;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * Serves the stub LRA coordinator, runs the load test from LoadDriver and exits once it has reported.
+ */
+@SpringBootApplication
+public class LoadTestApplication {
+
+	public static void main(String[] args) {
+		System.exit(SpringApplication.exit(SpringApplication.run(LoadTestApplication.class, args)));
+	}
+}
@@ -0,0 +1,152 @@
+package oracle.examples.cloudbank.loadtest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the MicroTx LRA coordinator, just enough of its REST API for the account and transfer services:
+ * start, join, close, cancel and status. Participants are completed or compensated, and then told the LRA has ended,
+ * synchronously in the close or cancel call. Nothing is persisted and nothing is recovered.
+ */
+@RestController
+@RequestMapping("/api/v1/lra-coordinator")
+public class StubLRACoordinator {
+
+    private static final Logger log = Logger.getLogger(StubLRACoordinator.class.getSimpleName());
+    static final String LRA_HTTP_CONTEXT_HEADER = "Long-Running-Action";
+    static final String LRA_HTTP_ENDED_CONTEXT_HEADER = "Long-Running-Action-Ended";
+    static final String LRA_HTTP_RECOVERY_HEADER = "Long-Running-Action-Recovery";
+    private static final Pattern LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"?([A-Za-z-]+)\"?");
+
+    private final String coordinatorUrl;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final Map<String, List<Map<String, String>>> participants = new ConcurrentHashMap<>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong participantFailures = new AtomicLong();
+
+    public StubLRACoordinator(@Value("${server.port}") int port) {
+        this.coordinatorUrl = "http://localhost:" + port + "/api/v1/lra-coordinator";
+    }
+
+    @PostMapping("/start")
+    public ResponseEntity<String> start(@RequestParam(value = "ClientID", required = false) String clientId) {
+        String lraId = coordinatorUrl + "/" + UUID.randomUUID();
+        participants.put(lraId, new CopyOnWriteArrayList<>());
+        started.incrementAndGet();
+        return ResponseEntity.created(URI.create(lraId)).body(lraId);
+    }
+
+    /**
+     * Enlist a participant, its endpoints are given as a link header and/or as the body
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<String> join(@PathVariable("id") String id,
+                                       @RequestHeader(value = "Link", required = false) String linkHeader,
+                                       @RequestBody(required = false) String body) {
+        List<Map<String, String>> lraParticipants = participants.get(lraId(id));
+        if (lraParticipants == null) return ResponseEntity.status(HttpStatus.GONE).body("LRA " + id + " is not active");
+        Map<String, String> links = new ConcurrentHashMap<>();
+        for (String link : new String[]{linkHeader, body}) {
+            if (link == null) continue;
+            Matcher matcher = LINK.matcher(link);
+            while (matcher.find()) links.putIfAbsent(matcher.group(2), matcher.group(1));
+        }
+        lraParticipants.add(links);
+        String recoveryUrl = lraId(id) + "/recovery/" + lraParticipants.size();
+        return ResponseEntity.ok().header(LRA_HTTP_RECOVERY_HEADER, recoveryUrl).body(recoveryUrl);
+    }
+
+    @PutMapping("/{id}/remove")
+    public ResponseEntity<String> leave(@PathVariable("id") String id) {
+        return ResponseEntity.ok().build();
+    }
+
+    @PutMapping("/{id}/close")
+    public ResponseEntity<String> close(@PathVariable("id") String id) {
+        return end(lraId(id), "complete", "Closed", closed);
+    }
+
+    @PutMapping("/{id}/cancel")
+    public ResponseEntity<String> cancel(@PathVariable("id") String id) {
+        return end(lraId(id), "compensate", "Cancelled", cancelled);
+    }
+
+    @GetMapping("/{id}/status")
+    public ResponseEntity<String> status(@PathVariable("id") String id) {
+        return participants.containsKey(lraId(id)) ? ResponseEntity.ok("Active") : ResponseEntity.notFound().build();
+    }
+
+    public long started() {
+        return started.get();
+    }
+
+    public long closed() {
+        return closed.get();
+    }
+
+    public long cancelled() {
+        return cancelled.get();
+    }
+
+    public long participantFailures() {
+        return participantFailures.get();
+    }
+
+    private ResponseEntity<String> end(String lraId, String action, String status, AtomicLong counter) {
+        List<Map<String, String>> lraParticipants = participants.remove(lraId);
+        if (lraParticipants == null) return ResponseEntity.notFound().build();
+        for (Map<String, String> links : lraParticipants) {
+            call(links.get(action), LRA_HTTP_CONTEXT_HEADER, lraId, "");
+        }
+        for (Map<String, String> links : lraParticipants) {
+            call(links.get("after"), LRA_HTTP_ENDED_CONTEXT_HEADER, lraId, status);
+        }
+        counter.incrementAndGet();
+        return ResponseEntity.ok(status);
+    }
+
+    private void call(String url, String header, String lraId, String body) {
+        if (url == null) return;
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                    .header(header, lraId)
+                    .header("Content-Type", "text/plain")
+                    .PUT(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            int statusCode = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (statusCode / 100 != 2) {
+                participantFailures.incrementAndGet();
+                log.warning(url + " returned " + statusCode + " for " + lraId);
+            }
+        } catch (Exception e) {
+            participantFailures.incrementAndGet();
+            log.warning(url + " failed for " + lraId + ": " + e);
+        }
+    }
+
+    private String lraId(String id) {
+        return coordinatorUrl + "/" + id;
+    }
+}
@@ -0,0 +1,170 @@
+package oracle.examples.cloudbank;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Routes withdraw, deposit and local transfer calls to the account service shard that holds the account.
+ * The shard map (account.shards.file) is a properties file of first account id = account service base url,
+ * a shard holding the ids from its first account id up to the next shard's, for example
+ *   1=http://account-0:8080
+ *   1000000=http://account-1:8080
+ * matching account.shard.first-account-id and last-account-id of each account service, which hands out ids
+ * from its own range. Ranges rather than a hash so that a shard is added by giving it the ids that follow,
+ * without moving existing accounts.
+ * The file is read again when it changes (checked every reload-interval-ms, so an updated ConfigMap is picked
+ * up without a restart) and on POST /shards/reload. A map that cannot be read is logged and the previous one
+ * kept. Without a file there is a single shard, account.withdraw.url and account.deposit.url.
+ */
+@RestController
+@DependsOn("applicationConfig")
+public class AccountShards {
+
+    private static final Logger log = Logger.getLogger(AccountShards.class.getSimpleName());
+    private static final String WITHDRAW_PATH = "/withdraw/withdraw";
+    private static final String DEPOSIT_PATH = "/deposit/deposit";
+    private static final String TRANSFER_PATH = "/transfer/transfer";
+
+    record Shard(long firstAccountId, URI withdrawUri, URI depositUri, URI transferUri) {
+    }
+
+    private final Path file;
+    private final long reloadIntervalMillis;
+    private volatile NavigableMap<Long, Shard> shards;
+    private volatile long loadedModified;
+    private Thread watcher;
+
+    public AccountShards(@Value("${account.shards.file:}") String file,
+                         @Value("${account.shards.reload-interval-ms:10000}") long reloadIntervalMillis) {
+        this.file = file.isEmpty() ? null : Path.of(file);
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        NavigableMap<Long, Shard> single = new TreeMap<>();
+        URI withdrawUri = URI.create(ApplicationConfig.accountWithdrawUrl);
+        single.put(0L, new Shard(0, withdrawUri, URI.create(ApplicationConfig.accountDepositUrl),
+                withdrawUri.resolve(TRANSFER_PATH)));
+        this.shards = single;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (file == null) return;
+        reload();
+        watcher = new Thread(this::watch, "account-shards-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @PreDestroy
+    void stop() {
+        if (watcher != null) watcher.interrupt();
+    }
+
+    public URI withdrawUri(long accountId) {
+        return shard(accountId).withdrawUri();
+    }
+
+    public URI depositUri(long accountId) {
+        return shard(accountId).depositUri();
+    }
+
+    /**
+     * The same-shard transfer endpoint of the shard that holds the account
+     */
+    public URI transferUri(long accountId) {
+        return shard(accountId).transferUri();
+    }
+
+    /**
+     * Whether both accounts are in the range of the same shard. An account id below the first shard's range is
+     * not in any, so it is never co-located.
+     */
+    public boolean sameShard(long accountId, long otherAccountId) {
+        NavigableMap<Long, Shard> current = shards;
+        Map.Entry<Long, Shard> shard = current.floorEntry(accountId);
+        Map.Entry<Long, Shard> otherShard = current.floorEntry(otherAccountId);
+        return shard != null && otherShard != null && shard.getValue() == otherShard.getValue();
+    }
+
+    Shard shard(long accountId) {
+        NavigableMap<Long, Shard> current = shards;
+        Map.Entry<Long, Shard> entry = current.floorEntry(accountId);
+        return entry != null ? entry.getValue() : current.firstEntry().getValue();
+    }
+
+    /**
+     * First account id and account service of each shard
+     */
+    @GetMapping("/shards")
+    public Map<Long, String> shards() {
+        Map<Long, String> view = new LinkedHashMap<>();
+        shards.forEach((firstAccountId, shard) -> view.put(firstAccountId, shard.withdrawUri().resolve("/").toString()));
+        return view;
+    }
+
+    @PostMapping("/shards/reload")
+    public ResponseEntity<?> reloadShards() {
+        if (file == null) return ResponseEntity.badRequest().body("account.shards.file is not set");
+        try {
+            reload();
+            return ResponseEntity.ok(shards());
+        } catch (IOException | IllegalArgumentException e) {
+            return ResponseEntity.internalServerError().body("shard map not reloaded: " + e.getMessage());
+        }
+    }
+
+    private synchronized void reload() throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        Properties map = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            map.load(reader);
+        }
+        if (map.isEmpty()) throw new IllegalArgumentException(file + " has no shards");
+        NavigableMap<Long, Shard> loaded = new TreeMap<>();
+        for (String firstAccountId : map.stringPropertyNames()) {
+            long first = Long.parseLong(firstAccountId.trim());
+            String baseUrl = map.getProperty(firstAccountId).trim().replaceAll("/+$", "");
+            loaded.put(first, new Shard(first, URI.create(baseUrl + WITHDRAW_PATH), URI.create(baseUrl + DEPOSIT_PATH),
+                    URI.create(baseUrl + TRANSFER_PATH)));
+        }
+        shards = loaded;
+        loadedModified = modified;
+        log.info("Loaded " + loaded.size() + " account shards from " + file);
+    }
+
+    private void watch() {
+        long checkedModified = loadedModified;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(reloadIntervalMillis);
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (modified == checkedModified) continue;
+                checkedModified = modified;
+                reload();
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException | IllegalArgumentException e) {
+                log.log(Level.WARNING, "Keeping the current account shard map, " + file + " could not be read", e);
+            }
+        }
+    }
+}
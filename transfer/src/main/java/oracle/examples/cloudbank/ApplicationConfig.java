@@ -1,8 +1,14 @@
 package oracle.examples.cloudbank;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @Configuration
 public class ApplicationConfig {
 
@@ -12,6 +18,14 @@ public class ApplicationConfig {
     static String transferCancelProcessURL;
     static String transferConfirmURL;
     static String transferConfirmProcessURL;
+    static String transferURL;
+    static int transferBatchParallelism;
+    static int transferBatchMaxItems;
+    static String lraCoordinatorURL;
+    static long lraCoordinatorTimeoutMillis;
+    static int transferAsyncThreads;
+    static boolean transferDirectCompletion;
+    static boolean transferLocalEnabled;
 
     public ApplicationConfig(
                              @Value("${account.withdraw.url}") String accountWithdrawUrl,
@@ -19,12 +33,48 @@ public class ApplicationConfig {
                              @Value("${transfer.cancel.url}") String transferCancelURL,
                              @Value("${transfer.cancel.process.url}") String transferCancelProcessURL,
                              @Value("${transfer.confirm.url}") String transferConfirmURL,
-                             @Value("${transfer.confirm.process.url}") String transferConfirmProcessURL) {
+                             @Value("${transfer.confirm.process.url}") String transferConfirmProcessURL,
+                             @Value("${transfer.url}") String transferURL,
+                             @Value("${transfer.batch.parallelism:16}") int transferBatchParallelism,
+                             @Value("${transfer.batch.max-items:10000}") int transferBatchMaxItems,
+                             @Value("${spring.microtx.lra.coordinator-url}") String lraCoordinatorURL,
+                             @Value("${transfer.coordinator.timeout-ms:30000}") long lraCoordinatorTimeoutMillis,
+                             @Value("${transfer.async.threads:4}") int transferAsyncThreads,
+                             @Value("${transfer.direct-completion:true}") boolean transferDirectCompletion,
+                             @Value("${transfer.local.enabled:false}") boolean transferLocalEnabled) {
         this.accountWithdrawUrl = accountWithdrawUrl;
         this.accountDepositUrl = accountDepositUrl;
         this.transferCancelURL = transferCancelURL;
         this.transferCancelProcessURL = transferCancelProcessURL;
         this.transferConfirmURL = transferConfirmURL;
         this.transferConfirmProcessURL = transferConfirmProcessURL;
+        this.transferURL = transferURL;
+        this.transferBatchParallelism = transferBatchParallelism;
+        this.transferBatchMaxItems = transferBatchMaxItems;
+        this.lraCoordinatorURL = lraCoordinatorURL;
+        this.lraCoordinatorTimeoutMillis = lraCoordinatorTimeoutMillis;
+        this.transferAsyncThreads = transferAsyncThreads;
+        this.transferDirectCompletion = transferDirectCompletion;
+        this.transferLocalEnabled = transferLocalEnabled;
+    }
+
+    /**
+     * The few shared threads that handle the responses of the async HttpClient, shut down with the context
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService asyncHttpExecutor() {
+        return Executors.newFixedThreadPool(transferAsyncThreads);
+    }
+
+    /**
+     * Non-blocking client for the async transfer path. Responses are handled on a few shared threads.
+     */
+    @Bean
+    public HttpClient asyncHttpClient(ExecutorService asyncHttpExecutor) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(asyncHttpExecutor)
+                .build();
     }
 }
@@ -0,0 +1,143 @@
+package oracle.examples.cloudbank;
+
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+
+import static com.oracle.microtx.springboot.lra.annotation.LRA.LRA_HTTP_CONTEXT_HEADER;
+
+/**
+ * Same saga as TransferService.transfer without holding a servlet thread for it.
+ * The LRA is started, closed and cancelled directly with the coordinator, and the participant calls carry
+ * the LRA context header explicitly since they do not run on the request thread. They also carry the request
+ * headers that the MicroTx RestTemplate propagates (spring.microtx.lra.headers-propagation-prefix), such as
+ * authorization and tracing headers, copied from the request before it is left.
+ * All waiting is done by the non-blocking HttpClient on its few threads (transfer.async.threads).
+ */
+@RestController
+@RequestMapping("/")
+@DependsOn("applicationConfig")
+public class AsyncTransferService {
+
+    private static final Logger log = Logger.getLogger(AsyncTransferService.class.getSimpleName());
+    private static final String CLIENT_ID = "transfer";
+    private static final String PROPAGATION_PREFIXES = "spring.microtx.lra.headers-propagation-prefix";
+
+    private final HttpClient httpClient;
+    private final LRACoordinatorClient coordinatorClient;
+    private final TransferMetrics metrics;
+    private final AccountShards accountShards;
+    private final List<String> propagatedHeaderPrefixes;
+
+    public AsyncTransferService(HttpClient asyncHttpClient, LRACoordinatorClient coordinatorClient,
+                                TransferMetrics metrics, AccountShards accountShards, Environment environment) {
+        this.httpClient = asyncHttpClient;
+        this.coordinatorClient = coordinatorClient;
+        this.metrics = metrics;
+        this.accountShards = accountShards;
+        // a set in YAML flow style, {x-b3-, authorization}, which binds as the keys of a map
+        this.propagatedHeaderPrefixes = Binder.get(environment)
+                .bind(PROPAGATION_PREFIXES, Bindable.mapOf(String.class, String.class))
+                .map(prefixes -> prefixes.keySet().stream().map(prefix -> prefix.toLowerCase(Locale.ROOT)).toList())
+                .orElse(List.of());
+    }
+
+    @RequestMapping(value = "/transfer/async", method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<?>> transfer(@RequestParam("fromAccount") long fromAccount,
+                                                         @RequestParam("toAccount") long toAccount,
+                                                         @RequestParam("amount") long amount,
+                                                         @RequestHeader HttpHeaders requestHeaders) {
+        long start = System.nanoTime();
+        Map<String, List<String>> propagated = propagatedHeaders(requestHeaders);
+        return coordinatorClient.start(CLIENT_ID)
+                .thenCompose(lraId -> transfer(lraId, fromAccount, toAccount, amount, propagated))
+                .exceptionally(e -> ResponseEntity.internalServerError().body("transfer failed: " + e.getMessage()))
+                .whenComplete((response, e) -> metrics.recordTransfer(start, !response.getStatusCode().is2xxSuccessful()
+                        ? "error" : TransferOutcome.isCompensate(response.getBody().toString()) ? "cancelled" : "closed"));
+    }
+
+    /**
+     * The request headers the MicroTx RestTemplate would propagate, by prefix, ignoring case
+     */
+    private Map<String, List<String>> propagatedHeaders(HttpHeaders requestHeaders) {
+        Map<String, List<String>> propagated = new HashMap<>();
+        requestHeaders.forEach((name, values) -> {
+            String lowerCase = name.toLowerCase(Locale.ROOT);
+            for (String prefix : propagatedHeaderPrefixes) {
+                if (lowerCase.startsWith(prefix)) {
+                    propagated.put(name, values);
+                    break;
+                }
+            }
+        });
+        return propagated;
+    }
+
+    private CompletableFuture<ResponseEntity<?>> transfer(String lraId, long fromAccount, long toAccount, long amount,
+                                                          Map<String, List<String>> propagated) {
+        log.info("Started new LRA/async transfer Id: " + lraId);
+        return participantCall("withdraw", accountShards.withdrawUri(fromAccount), lraId, fromAccount, amount, propagated)
+                .thenCompose(withdrawOutcome -> TransferOutcome.succeeded(withdrawOutcome)
+                        ? participantCall("deposit", accountShards.depositUri(toAccount), lraId, toAccount, amount,
+                                propagated)
+                                .thenApply(depositOutcome -> TransferOutcome.combine(withdrawOutcome, depositOutcome))
+                        : CompletableFuture.completedFuture(withdrawOutcome))
+                .handle((outcome, e) -> {
+                    if (e != null) {
+                        // the participant state is unknown, cancel so that whatever was done is compensated
+                        return completion("cancel", lraId).<ResponseEntity<?>>handle((status, cancelFailure) ->
+                                ResponseEntity.internalServerError().body("transfer failed: " + e.getMessage()));
+                    }
+                    boolean isCompensate = TransferOutcome.isCompensate(outcome);
+                    log.info("LRA/transfer action will be " + (isCompensate ? "cancel" : "close"));
+                    return completion(isCompensate ? "cancel" : "close", lraId)
+                            .<ResponseEntity<?>>thenApply(status -> ResponseEntity.ok(TransferOutcome.status(outcome)));
+                })
+                .thenCompose(response -> response);
+    }
+
+    private CompletableFuture<String> completion(String phase, String lraId) {
+        long start = System.nanoTime();
+        return (phase.equals("cancel") ? coordinatorClient.cancel(lraId) : coordinatorClient.close(lraId))
+                .whenComplete((status, e) -> metrics.recordPhase(start, phase, e == null ? "succeeded" : "error"));
+    }
+
+    private CompletableFuture<String> participantCall(String phase, URI serviceUri, String lraId, long accountId,
+                                                      long amount, Map<String, List<String>> propagated) {
+        long start = System.nanoTime();
+        URI accountUri = UriComponentsBuilder.fromUri(serviceUri)
+                .queryParam("accountId", accountId)
+                .queryParam("amount", amount)
+                .build()
+                .toUri();
+        HttpRequest.Builder builder = HttpRequest.newBuilder(accountUri);
+        propagated.forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+        HttpRequest request = builder
+                .header(LRA_HTTP_CONTEXT_HEADER, lraId)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            if (response.statusCode() / 100 != 2)
+                throw new CompletionException(new IllegalStateException(
+                        "account service returned " + response.statusCode() + " for " + accountUri));
+            return response.body();
+        }).whenComplete((outcome, e) -> metrics.recordPhase(start, phase, TransferMetrics.outcome(outcome)));
+    }
+}
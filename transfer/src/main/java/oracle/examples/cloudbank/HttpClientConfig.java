@@ -0,0 +1,76 @@
+package oracle.examples.cloudbank;
+
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Pooled keep-alive HTTP/1.1 connections for the MicroTxLRA RestTemplate, so that the calls a transfer makes
+ * to the account service and back to this service reuse connections instead of opening new ones.
+ * The MicroTx starter creates the RestTemplate; only its request factory is replaced, its LRA interceptors are kept.
+ * Other RestTemplates in the context are left as they are.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    static final String MICROTX_REST_TEMPLATE = "MicroTxLRA";
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager restTemplateConnectionManager(
+            @Value("${transfer.http.pool.max-total:200}") int maxTotal,
+            @Value("${transfer.http.pool.max-per-route:50}") int maxPerRoute,
+            @Value("${transfer.http.connect-timeout-ms:5000}") long connectTimeout,
+            @Value("${transfer.http.pool.time-to-live-seconds:300}") long timeToLive) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                        .setTimeToLive(TimeValue.ofSeconds(timeToLive))
+                        .build())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient restTemplateHttpClient(PoolingHttpClientConnectionManager restTemplateConnectionManager,
+            @Value("${transfer.http.response-timeout-ms:30000}") long responseTimeout,
+            @Value("${transfer.http.pool.idle-eviction-seconds:30}") long idleEviction) {
+        return HttpClients.custom()
+                .setConnectionManager(restTemplateConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(responseTimeout))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(idleEviction))
+                .build();
+    }
+
+    /**
+     * Static so that it is registered before the MicroTx RestTemplate is created,
+     * the HttpClient is only looked up when that happens.
+     */
+    @Bean
+    public static BeanPostProcessor pooledRestTemplatePostProcessor(ObjectProvider<CloseableHttpClient> restTemplateHttpClient) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (MICROTX_REST_TEMPLATE.equals(beanName) && bean instanceof RestTemplate restTemplate) {
+                    restTemplate.setRequestFactory(new HttpComponentsClientHttpRequestFactory(restTemplateHttpClient.getObject()));
+                }
+                return bean;
+            }
+        };
+    }
+}
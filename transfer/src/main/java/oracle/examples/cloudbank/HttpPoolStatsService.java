@@ -0,0 +1,42 @@
+package oracle.examples.cloudbank;
+
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.pool.PoolStats;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+public class HttpPoolStatsService {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    public HttpPoolStatsService(PoolingHttpClientConnectionManager restTemplateConnectionManager) {
+        this.connectionManager = restTemplateConnectionManager;
+    }
+
+    /**
+     * Connection pool of the MicroTxLRA RestTemplate, in total and per route
+     */
+    @GetMapping("/httpPoolStats")
+    public ResponseEntity<Map<String, Object>> httpPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("total", toMap(connectionManager.getTotalStats()));
+        Map<String, Object> routes = new LinkedHashMap<>();
+        connectionManager.getRoutes().forEach(route -> routes.put(route.toString(), toMap(connectionManager.getStats(route))));
+        stats.put("routes", routes);
+        return ResponseEntity.ok(stats);
+    }
+
+    private static Map<String, Integer> toMap(PoolStats poolStats) {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("leased", poolStats.getLeased());
+        map.put("pending", poolStats.getPending());
+        map.put("available", poolStats.getAvailable());
+        map.put("max", poolStats.getMax());
+        return map;
+    }
+}
@@ -0,0 +1,182 @@
+package oracle.examples.cloudbank;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Optional Idempotency-Key header for POST /transfer. The first request with a key runs the transfer and its
+ * response is kept; a repeat with the same key gets that response (with Idempotent-Replayed: true) instead of
+ * starting another LRA, waiting up to wait-ms if the first is still running (409 after that).
+ * A key reused with different parameters is rejected with 422. 5xx responses are not kept, so a retry after
+ * one runs the transfer again. This runs ahead of every other filter, before the LRA is started.
+ * Responses are kept in memory for ttl-ms, at most max-keys of them (oldest dropped first, never one whose
+ * transfer is still running), so clients should retry against the same instance or with a key that is still fresh.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    private static final Logger log = Logger.getLogger(IdempotencyFilter.class.getSimpleName());
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    record StoredResponse(int status, String contentType, byte[] body) {
+    }
+
+    private static class Entry {
+        final String parameters;
+        final long createdAt = System.currentTimeMillis();
+        final CompletableFuture<StoredResponse> response = new CompletableFuture<>();
+
+        Entry(String parameters) {
+            this.parameters = parameters;
+        }
+    }
+
+    private final TransferMetrics metrics;
+    private final int maxKeys;
+    private final long ttlMillis;
+    private final long waitMillis;
+    // in insertion order, guarded by its own lock, so that an entry removed from it is also gone from the order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    public IdempotencyFilter(TransferMetrics metrics,
+                             @Value("${transfer.idempotency.max-keys:100000}") int maxKeys,
+                             @Value("${transfer.idempotency.ttl-ms:3600000}") long ttlMillis,
+                             @Value("${transfer.idempotency.wait-ms:30000}") long waitMillis) {
+        this.metrics = metrics;
+        this.maxKeys = maxKeys;
+        this.ttlMillis = ttlMillis;
+        this.waitMillis = waitMillis;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return maxKeys <= 0 || !"POST".equals(request.getMethod()) || !"/transfer".equals(request.getServletPath())
+                || request.getHeader(IDEMPOTENCY_KEY) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(IDEMPOTENCY_KEY);
+        String parameters = request.getParameter("fromAccount") + ":" + request.getParameter("toAccount") + ":" +
+                request.getParameter("amount");
+        Entry entry = new Entry(parameters);
+        Entry existing = keep(key, entry);
+        if (existing != null) {
+            replay(key, existing, parameters, response);
+            return;
+        }
+        metrics.recordIdempotency("executed");
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+        } catch (IOException | ServletException | RuntimeException e) {
+            remove(key, entry);
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+        StoredResponse stored = new StoredResponse(wrapper.getStatus(), wrapper.getContentType(),
+                wrapper.getContentAsByteArray());
+        if (stored.status() >= 500) remove(key, entry);
+        entry.response.complete(stored);
+        wrapper.copyBodyToResponse();
+    }
+
+    private void replay(String key, Entry existing, String parameters, HttpServletResponse response) throws IOException {
+        if (!existing.parameters.equals(parameters)) {
+            metrics.recordIdempotency("mismatch");
+            write(response, HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    IDEMPOTENCY_KEY + " " + key + " was used for a different transfer");
+            return;
+        }
+        StoredResponse stored;
+        try {
+            stored = existing.response.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            metrics.recordIdempotency("in-progress");
+            write(response, HttpStatus.CONFLICT.value(), "transfer with " + IDEMPOTENCY_KEY + " " + key + " is still in progress");
+            return;
+        } catch (ExecutionException e) {
+            metrics.recordIdempotency("failed");
+            write(response, HttpStatus.INTERNAL_SERVER_ERROR.value(), "transfer failed: " + e.getCause().getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write(response, HttpStatus.SERVICE_UNAVAILABLE.value(), "interrupted");
+            return;
+        }
+        log.info("Replaying response for " + IDEMPOTENCY_KEY + " " + key);
+        metrics.recordIdempotency("replayed");
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) response.setContentType(stored.contentType());
+        response.setHeader(IDEMPOTENT_REPLAYED, "true");
+        response.setContentLength(stored.body().length);
+        response.getOutputStream().write(stored.body());
+    }
+
+    /**
+     * Keep the entry for the key and return null, or return the entry already kept for it. An expired entry is
+     * replaced, the new one going to the end of the order.
+     */
+    private Entry keep(String key, Entry entry) {
+        synchronized (entries) {
+            Entry existing = entries.get(key);
+            if (existing != null && !expired(existing)) return existing;
+            entries.remove(key);
+            entries.put(key, entry);
+            evict();
+            return null;
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * Drop the oldest responses while more than max-keys are kept. A transfer that is still running is kept,
+     * since a repeat of it must wait for it rather than start another. Called holding the lock on entries.
+     */
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxKeys && eldest.hasNext()) {
+            if (eldest.next().response.isDone()) eldest.remove();
+        }
+    }
+
+    private boolean expired(Entry entry) {
+        return entry.response.isDone() && System.currentTimeMillis() - entry.createdAt > ttlMillis;
+    }
+
+    private static void write(HttpServletResponse response, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        response.setStatus(status);
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,85 @@
+package oracle.examples.cloudbank;
+
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking calls to the LRA coordinator REST API, for transfers that start and end their LRA
+ * themselves rather than through the MicroTx @LRA filter.
+ * The LRA id returned by the coordinator is the URL of the LRA, close and cancel are PUTs below it.
+ * Each call fails with an HttpTimeoutException, or a TimeoutException, after transfer.coordinator.timeout-ms.
+ */
+@Component
+@DependsOn("applicationConfig")
+public class LRACoordinatorClient {
+
+    private final HttpClient httpClient;
+    private final String coordinatorUrl;
+    private final Duration timeout;
+
+    public LRACoordinatorClient(HttpClient asyncHttpClient) {
+        this.httpClient = asyncHttpClient;
+        this.coordinatorUrl = ApplicationConfig.lraCoordinatorURL;
+        this.timeout = Duration.ofMillis(ApplicationConfig.lraCoordinatorTimeoutMillis);
+    }
+
+    /**
+     * Start a new LRA, completes with its id.
+     */
+    public CompletableFuture<String> start(String clientId) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(coordinatorUrl + "/start?ClientID=" +
+                        URLEncoder.encode(clientId, StandardCharsets.UTF_8) + "&TimeLimit=0"))
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return send(request).thenApply(response -> {
+            String lraId = response.body();
+            if (lraId == null || lraId.isBlank()) lraId = response.headers().firstValue("Location").orElse(null);
+            if (lraId == null) throw new CompletionException(new IllegalStateException("Failed to create LRA"));
+            return lraId.trim();
+        });
+    }
+
+    /**
+     * Close the LRA, completes with the LRA status reported by the coordinator.
+     */
+    public CompletableFuture<String> close(String lraId) {
+        return end(lraId, "/close");
+    }
+
+    /**
+     * Cancel the LRA, completes with the LRA status reported by the coordinator.
+     */
+    public CompletableFuture<String> cancel(String lraId) {
+        return end(lraId, "/cancel");
+    }
+
+    private CompletableFuture<String> end(String lraId, String action) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(lraId + action))
+                .timeout(timeout)
+                .PUT(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return send(request).thenApply(HttpResponse::body);
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        // the request timeout does not cover the connect, so the whole call is limited as well
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            if (response.statusCode() / 100 != 2)
+                throw new CompletionException(new IllegalStateException(
+                        "LRA coordinator returned " + response.statusCode() + " for " + request.uri()));
+            return response;
+        }).orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,61 @@
+package oracle.examples.cloudbank;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gives POST /transfer to TransferService.localTransfer before the LRA filter starts an LRA for it, so that a
+ * transfer between two accounts on the same shard does not start a saga. Other transfers, and requests whose
+ * parameters do not parse, go on down the chain to the saga as before.
+ * Runs after the Idempotency-Key filter, so that same-shard transfers are replayed like the others.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class LocalTransferFilter extends OncePerRequestFilter {
+
+    // filters are created with the web server, ahead of the controllers
+    private final ObjectProvider<TransferService> transferService;
+
+    public LocalTransferFilter(ObjectProvider<TransferService> transferService) {
+        this.transferService = transferService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !ApplicationConfig.transferLocalEnabled || !"POST".equals(request.getMethod())
+                || !"/transfer".equals(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ResponseEntity<?> local;
+        try {
+            local = transferService.getObject().localTransfer(Long.parseLong(request.getParameter("fromAccount")),
+                    Long.parseLong(request.getParameter("toAccount")), Long.parseLong(request.getParameter("amount")));
+        } catch (NumberFormatException e) {
+            local = null;
+        }
+        if (local == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        byte[] body = String.valueOf(local.getBody()).getBytes(StandardCharsets.UTF_8);
+        response.setStatus(local.getStatusCode().value());
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,171 @@
+package oracle.examples.cloudbank;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured trace of the transfer side of the saga: one JSON line per step on the saga.trace logger,
+ * with the lraId, so it can be joined with the account service's trace of the same saga.
+ * Callers only fill in a preallocated record of a ring buffer, a single drain thread formats and writes them.
+ * When the ring is full the event is dropped and counted in trace.events.dropped rather than blocking the call.
+ * Sampling is by lraId (the same hash in both services), so a saga is traced completely or not at all.
+ * The drain thread and the event format are the same as the account service's SagaTrace.
+ */
+@Component
+public class SagaTrace {
+    private static final Logger trace = LoggerFactory.getLogger("saga.trace");
+
+    // accountId or amount that does not apply to the step
+    public static final long NONE = Long.MIN_VALUE;
+    private static final int SAMPLE_SCALE = 10000;
+
+    private static final class Event {
+        long timestamp;
+        String lraId;
+        String step;
+        long accountId;
+        long amount;
+        String outcome;
+        long micros;
+    }
+
+    final boolean enabled;
+    final int sampleThreshold;
+    private final Event[] ring;
+    private final int mask;
+    // next sequence to claim, a slot is published by setting published[slot] to its sequence + 1
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLongArray published;
+    private volatile long drained;
+    private final Counter dropped;
+    private final StringBuilder line = new StringBuilder(256);
+    private volatile boolean running;
+    private Thread drainer;
+
+    public SagaTrace(MeterRegistry meterRegistry,
+                     @Value("${transfer.trace.enabled:true}") boolean enabled,
+                     @Value("${transfer.trace.sample-rate:1.0}") double sampleRate,
+                     @Value("${transfer.trace.buffer-size:8192}") int bufferSize) {
+        this.enabled = enabled;
+        this.sampleThreshold = (int) Math.round(Math.max(0, Math.min(1, sampleRate)) * SAMPLE_SCALE);
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) ring[i] = new Event();
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        this.dropped = Counter.builder("trace.events.dropped").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled || sampleThreshold == 0) return;
+        running = true;
+        drainer = new Thread(this::drain, "saga-trace-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (drainer == null) return;
+        running = false;
+        LockSupport.unpark(drainer);
+        drainer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Whether the saga with this lraId is traced
+     */
+    public boolean sampled(String lraId) {
+        return running && lraId != null && Math.floorMod(lraId.hashCode(), SAMPLE_SCALE) < sampleThreshold;
+    }
+
+    public void event(String lraId, String step, String outcome) {
+        event(lraId, step, NONE, NONE, outcome, 0);
+    }
+
+    /**
+     * Trace a step of the saga, startNanos is its System.nanoTime() start or 0 if it is not timed
+     */
+    public void event(String lraId, String step, long accountId, long amount, String outcome, long startNanos) {
+        if (!sampled(lraId)) return;
+        long micros = startNanos == 0 ? NONE : TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - drained >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        Event event = ring[slot];
+        event.timestamp = System.currentTimeMillis();
+        event.lraId = lraId;
+        event.step = step;
+        event.accountId = accountId;
+        event.amount = amount;
+        event.outcome = outcome;
+        event.micros = micros;
+        published.set(slot, seq + 1);
+    }
+
+    private void drain() {
+        while (running || drained < head.get()) {
+            if (!drainNext()) {
+                if (!running) break;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private boolean drainNext() {
+        long seq = drained;
+        int slot = (int) seq & mask;
+        if (published.get(slot) != seq + 1) return false;
+        Event event = ring[slot];
+        if (trace.isInfoEnabled()) {
+            line.setLength(0);
+            line.append("{\"ts\":").append(event.timestamp).append(",\"service\":\"transfer\"");
+            string("lraId", event.lraId);
+            string("step", event.step);
+            number("accountId", event.accountId);
+            number("amount", event.amount);
+            string("outcome", event.outcome);
+            number("micros", event.micros);
+            line.append('}');
+            trace.info(line.toString());
+        }
+        event.lraId = event.outcome = null;
+        drained = seq + 1;
+        return true;
+    }
+
+    private void number(String name, long value) {
+        if (value == NONE) return;
+        line.append(",\"").append(name).append("\":").append(value);
+    }
+
+    private void string(String name, String value) {
+        if (value == null) return;
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') line.append('\\').append(c);
+            else if (c < 0x20) line.append(String.format("\\u%04x", (int) c));
+            else line.append(c);
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,34 @@
+package oracle.examples.cloudbank;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * The class data sharing training run of the fast-startup build (see the Dockerfile): with
+ * startup.training-run=true the service exits as soon as it has started, and the JVM then writes the archive
+ * of the classes it loaded (-XX:ArchiveClassesAtExit).
+ * The property is checked when the event arrives rather than in a condition, since conditions are fixed when
+ * the Spring AOT build is processed.
+ */
+@Component
+public class StartupTrainingRun implements ApplicationListener<ApplicationReadyEvent> {
+    private static final Logger log = LoggerFactory.getLogger(StartupTrainingRun.class);
+
+    private final boolean trainingRun;
+
+    public StartupTrainingRun(@Value("${startup.training-run:false}") boolean trainingRun) {
+        this.trainingRun = trainingRun;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!trainingRun) return;
+        log.info("training run started in " + event.getTimeTaken().toMillis() + "ms, exiting");
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
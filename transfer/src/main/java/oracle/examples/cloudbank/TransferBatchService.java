@@ -0,0 +1,88 @@
+package oracle.examples.cloudbank;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Runs many transfers from one request, for payroll and settlement runs.
+ * Each item is a separate transfer with its own LRA. Items are posted to the /transfer endpoint
+ * so the MicroTx filter starts the LRA, and at most transfer.batch.parallelism of them run at once:
+ * an item is only handed to the executor once an earlier one has finished.
+ * A batch of more than transfer.batch.max-items is refused with 400.
+ */
+@RestController
+@RequestMapping("/transfers")
+@DependsOn("applicationConfig")
+public class TransferBatchService {
+
+    private static final Logger log = Logger.getLogger(TransferBatchService.class.getSimpleName());
+
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+    private final URI transferUri;
+
+    public TransferBatchService(@Qualifier("MicroTxLRA") RestTemplate restTemplate) throws Exception {
+        this.restTemplate = restTemplate;
+        this.executor = Executors.newFixedThreadPool(ApplicationConfig.transferBatchParallelism);
+        this.transferUri = new URI(ApplicationConfig.transferURL);
+    }
+
+    /**
+     * Returns the instructions in request order with the outcome of each transfer filled in.
+     */
+    @RequestMapping(value = "/batch", method = RequestMethod.POST)
+    public ResponseEntity<?> transferBatch(@RequestBody List<TransferInstruction> instructions)
+            throws InterruptedException {
+        if (instructions.size() > ApplicationConfig.transferBatchMaxItems) {
+            return ResponseEntity.badRequest().body("batch of " + instructions.size() + " transfers is over the " +
+                    ApplicationConfig.transferBatchMaxItems + " allowed, split it");
+        }
+        log.info("Received batch of " + instructions.size() + " transfers");
+        Semaphore running = new Semaphore(ApplicationConfig.transferBatchParallelism);
+        List<CompletableFuture<TransferInstruction>> futures = new ArrayList<>(instructions.size());
+        for (TransferInstruction instruction : instructions) {
+            running.acquire();
+            futures.add(CompletableFuture.supplyAsync(() -> transfer(instruction), executor)
+                    .whenComplete((outcome, e) -> running.release()));
+        }
+        List<TransferInstruction> outcomes = new ArrayList<>(instructions.size());
+        for (CompletableFuture<TransferInstruction> future : futures) {
+            outcomes.add(future.join());
+        }
+        return ResponseEntity.ok(outcomes);
+    }
+
+    private TransferInstruction transfer(TransferInstruction instruction) {
+        URI uri = UriComponentsBuilder.fromUri(transferUri)
+                .queryParam("fromAccount", instruction.getFromAccount())
+                .queryParam("toAccount", instruction.getToAccount())
+                .queryParam("amount", instruction.getAmount())
+                .build()
+                .toUri();
+        try {
+            instruction.setOutcome(restTemplate.postForEntity(uri, null, String.class).getBody());
+        } catch (Exception e) {
+            instruction.setOutcome("transfer failed: " + e.getMessage());
+        }
+        return instruction;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
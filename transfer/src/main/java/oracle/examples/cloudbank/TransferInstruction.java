@@ -0,0 +1,33 @@
+package oracle.examples.cloudbank;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One item of a batch transfer request, and its outcome in the response.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransferInstruction {
+
+    private long fromAccount;
+
+    private long toAccount;
+
+    private long amount;
+
+    /**
+     * The response of the individual transfer, or the failure reason. Not read from the request.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private String outcome;
+
+    public TransferInstruction(long fromAccount, long toAccount, long amount) {
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amount = amount;
+    }
+}
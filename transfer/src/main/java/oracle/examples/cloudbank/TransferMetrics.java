@@ -0,0 +1,66 @@
+package oracle.examples.cloudbank;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Micrometer timers for the saga, exposed through /actuator/prometheus:
+ *  - transfer: the whole transfer, by outcome (closed, cancelled, error)
+ *  - transfer.phase: withdraw, deposit, close, cancel and local (a same-shard transfer), by outcome
+ *    (succeeded, failed, error, and fallback for a local transfer that went on to the saga)
+ *  - transfer.idempotency: requests with an Idempotency-Key, by result (executed, replayed, in-progress,
+ *    mismatch, failed)
+ * Meters are created once per tag combination and then looked up by the tag values, without building a key.
+ */
+@Component
+public class TransferMetrics {
+
+    private record Phase(String phase, String outcome) {
+    }
+
+    private final Map<String, Timer> transferTimers = new ConcurrentHashMap<>();
+    private final Map<Phase, Timer> phaseTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> idempotencyCounters = new ConcurrentHashMap<>();
+    private final Function<String, Timer> newTransferTimer;
+    private final Function<Phase, Timer> newPhaseTimer;
+    private final Function<String, Counter> newIdempotencyCounter;
+
+    public TransferMetrics(MeterRegistry meterRegistry) {
+        newTransferTimer = outcome -> Timer.builder("transfer").tags("outcome", outcome).register(meterRegistry);
+        newPhaseTimer = phase -> Timer.builder("transfer.phase")
+                .tags("phase", phase.phase(), "outcome", phase.outcome()).register(meterRegistry);
+        newIdempotencyCounter = result -> Counter.builder("transfer.idempotency").tags("result", result)
+                .register(meterRegistry);
+    }
+
+    public void recordTransfer(long start, String outcome) {
+        record(start, transferTimers.computeIfAbsent(outcome, newTransferTimer));
+    }
+
+    public void recordPhase(long start, String phase, String outcome) {
+        record(start, phaseTimers.computeIfAbsent(new Phase(phase, outcome), newPhaseTimer));
+    }
+
+    public void recordIdempotency(String result) {
+        idempotencyCounters.computeIfAbsent(result, newIdempotencyCounter).increment();
+    }
+
+    /**
+     * "withdraw succeeded", "deposit failed: ..." as a small set of tag values
+     */
+    public static String outcome(String participantResponse) {
+        if (participantResponse == null) return "error";
+        return TransferOutcome.succeeded(participantResponse) ? "succeeded" : "failed";
+    }
+
+    private static void record(long start, Timer timer) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
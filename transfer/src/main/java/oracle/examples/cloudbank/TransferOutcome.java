@@ -0,0 +1,30 @@
+package oracle.examples.cloudbank;
+
+/**
+ * The string protocol between the transfer and account services: each participant call returns
+ * "withdraw succeeded", "deposit failed: account does not exist" and the like, the transfer outcome is the
+ * withdraw outcome followed by the deposit outcome, and the LRA is cancelled unless both succeeded.
+ */
+public final class TransferOutcome {
+
+    static final String STATUS_PREFIX = "transfer status:";
+
+    private TransferOutcome() {
+    }
+
+    public static boolean succeeded(String participantOutcome) {
+        return participantOutcome != null && participantOutcome.contains("succeeded");
+    }
+
+    public static String combine(String withdrawOutcome, String depositOutcome) {
+        return withdrawOutcome + " " + depositOutcome;
+    }
+
+    public static boolean isCompensate(String transferOutcome) {
+        return !succeeded(transferOutcome) || transferOutcome.contains("failed");
+    }
+
+    public static String status(String transferOutcome) {
+        return STATUS_PREFIX + transferOutcome;
+    }
+}
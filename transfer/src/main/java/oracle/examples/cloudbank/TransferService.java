@@ -7,13 +7,24 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.apache.hc.client5.http.ConnectTimeoutException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.logging.Logger;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 import static com.oracle.microtx.springboot.lra.annotation.LRA.LRA_HTTP_CONTEXT_HEADER;
 
@@ -21,10 +32,9 @@ import static com.oracle.microtx.springboot.lra.annotation.LRA.LRA_HTTP_CONTEXT_
 @RequestMapping("/")
 public class TransferService {
 
-    private static final Logger log = Logger.getLogger(TransferService.class.getSimpleName());
     public static final String TRANSFER_ID = "TRANSFER_ID";
-    private static URI withdrawUri;
-    private static URI depositUri;
+    // journal entries of a same-shard transfer have this id, with the prefix, in place of an LRA id
+    static final String LOCAL_TRANSFER_PREFIX = "local-";
     private static URI transferCancelUri;
     private static URI transferConfirmUri;
     private static URI transferProcessCancelUri;
@@ -33,8 +43,6 @@ public class TransferService {
 
    static {
         try {
-            withdrawUri = new URI(ApplicationConfig.accountWithdrawUrl);
-            depositUri = new URI(ApplicationConfig.accountDepositUrl);
             transferCancelUri = new URI(ApplicationConfig.transferCancelURL);
             transferConfirmUri = new URI(ApplicationConfig.transferConfirmURL);
             transferProcessCancelUri = new URI(ApplicationConfig.transferCancelProcessURL);
@@ -49,6 +57,18 @@ public class TransferService {
     @Qualifier("MicroTxLRA")
     RestTemplate restTemplate;
 
+    @Autowired
+    LRACoordinatorClient lraCoordinatorClient;
+
+    @Autowired
+    TransferMetrics metrics;
+
+    @Autowired
+    SagaTrace trace;
+
+    @Autowired
+    AccountShards accountShards;
+
     @RequestMapping(value = "/transfer", method = RequestMethod.POST)
     @LRA(value = LRA.Type.REQUIRES_NEW, end = false)
     public ResponseEntity<?> transfer(@RequestParam("fromAccount") long fromAccount,
@@ -59,48 +79,153 @@ public class TransferService {
         if (lraId == null) {
             return ResponseEntity.internalServerError().body("Failed to create LRA");
         }
-        log.info("Started new LRA/transfer Id: " + lraId);
-        boolean isCompensate = false;
-        String returnString = "";
-        returnString += withdraw(new URI(lraId), fromAccount, amount);
-        log.info(returnString);
-        if (returnString.contains("succeeded")) {
-            returnString += " " + deposit(new URI(lraId), toAccount, amount);
-            log.info(returnString);
-            if (returnString.contains("failed")) isCompensate = true; //deposit failed
-        } else isCompensate = true; //withdraw failed
-        log.info("LRA/transfer action will be " + (isCompensate?"cancel":"close"));
-        HttpHeaders headers = new HttpHeaders();
-        headers.add("TRANSFER_ID", lraId);
-        HttpEntity<String> requestEntity = new HttpEntity<>(null, headers);
-        URI completionUri = getTarget(isCompensate?transferCancelUri:transferConfirmUri)
+        long transferStart = System.nanoTime();
+        String transferOutcome = "error";
+        try {
+            ResponseEntity<?> response = withdrawDepositAndComplete(fromAccount, toAccount, amount, lraId);
+            transferOutcome = TransferOutcome.isCompensate(response.getBody().toString()) ? "cancelled" : "closed";
+            return response;
+        } finally {
+            metrics.recordTransfer(transferStart, transferOutcome);
+            trace.event(lraId, "transfer", SagaTrace.NONE, amount, transferOutcome, transferStart);
+        }
+    }
+
+    /**
+     * Same-shard fast path, called by LocalTransferFilter before an LRA is started. When both accounts are on
+     * the same account service shard, that service does the transfer in one local transaction and there is no
+     * saga. Null if the accounts are on different shards, or transfer.local.enabled is false, and the transfer
+     * goes on to the saga. It also goes on to the saga when the connection to the account service fails, as the
+     * request was then never sent. Once it was sent, a 5xx or a failure such as a read timeout leaves the outcome
+     * unknown (the account service answers 500 when its journal commit did not finish in time and may still
+     * commit), so it is an error and not retried as a saga, which could do the transfer twice.
+     */
+    public ResponseEntity<?> localTransfer(long fromAccount, long toAccount, long amount) {
+        if (!ApplicationConfig.transferLocalEnabled || !accountShards.sameShard(fromAccount, toAccount)) return null;
+        String transferId = LOCAL_TRANSFER_PREFIX + UUID.randomUUID();
+        URI accountUri = getTarget(accountShards.transferUri(fromAccount))
+                .queryParam("transferId", transferId)
+                .queryParam("fromAccount", fromAccount)
+                .queryParam("toAccount", toAccount)
+                .queryParam("amount", amount)
                 .build()
                 .toUri();
-        System.out.println("TransferService.transfer transferConfirmUri:" + transferConfirmUri.toASCIIString());
-        restTemplate.postForEntity(completionUri, requestEntity, String.class);
-        return ResponseEntity.ok("transfer status:" + returnString);
+        long start = System.nanoTime();
+        String transferOutcome = null;
+        boolean toSaga = false;
+        try {
+            transferOutcome = restTemplate.postForEntity(accountUri, null, String.class).getBody();
+            return ResponseEntity.ok(TransferOutcome.status(transferOutcome));
+        } catch (HttpServerErrorException e) {
+            return unknownOutcome(transferId, e);
+        } catch (ResourceAccessException e) {
+            if (!notSent(e)) return unknownOutcome(transferId, e);
+            toSaga = true;
+            return null;
+        } finally {
+            boolean failed = transferOutcome == null || TransferOutcome.isCompensate(transferOutcome);
+            metrics.recordPhase(start, "local", toSaga ? "fallback" : transferOutcome == null ? "error"
+                    : failed ? "failed" : "succeeded");
+            // a transfer that goes on to the saga is recorded there
+            if (!toSaga) metrics.recordTransfer(start, transferOutcome == null ? "error" : failed ? "cancelled" : "closed");
+            trace.event(transferId, "local", fromAccount, amount,
+                    toSaga ? "fallback" : transferOutcome == null ? "error" : transferOutcome, start);
+        }
+    }
+
+    private static ResponseEntity<?> unknownOutcome(String transferId, Exception e) {
+        return ResponseEntity.internalServerError()
+                .body("Outcome of transfer " + transferId + " unknown: " + e.getMessage());
+    }
+
+    /**
+     * Whether the request failed before it reached the account service
+     */
+    private static boolean notSent(ResourceAccessException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                || cause instanceof UnknownHostException || cause instanceof NoRouteToHostException;
+    }
+
+    private ResponseEntity<?> withdrawDepositAndComplete(long fromAccount, long toAccount, long amount, String lraId) throws Exception {
+        String returnString = withdraw(lraId, fromAccount, amount);
+        if (TransferOutcome.succeeded(returnString)) {
+            returnString = TransferOutcome.combine(returnString, deposit(lraId, toAccount, amount));
+        }
+        boolean isCompensate = TransferOutcome.isCompensate(returnString); //withdraw or deposit failed
+        long completionStart = System.nanoTime();
+        String completionOutcome = "error";
+        try {
+            if (ApplicationConfig.transferDirectCompletion) {
+                // end the LRA with the coordinator directly rather than via the /close and /cancel loopback calls
+                await(isCompensate ? lraCoordinatorClient.cancel(lraId) : lraCoordinatorClient.close(lraId), lraId);
+                completionOutcome = "succeeded";
+                return ResponseEntity.ok(TransferOutcome.status(returnString));
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("TRANSFER_ID", lraId);
+            HttpEntity<String> requestEntity = new HttpEntity<>(null, headers);
+            URI completionUri = getTarget(isCompensate?transferCancelUri:transferConfirmUri)
+                    .build()
+                    .toUri();
+            restTemplate.postForEntity(completionUri, requestEntity, String.class);
+            completionOutcome = "succeeded";
+            return ResponseEntity.ok(TransferOutcome.status(returnString));
+        } finally {
+            metrics.recordPhase(completionStart, isCompensate ? "cancel" : "close", completionOutcome);
+            trace.event(lraId, isCompensate ? "cancel" : "close", SagaTrace.NONE, SagaTrace.NONE,
+                    completionOutcome, completionStart);
+        }
+    }
 
+    /**
+     * Wait for the coordinator to end the LRA. A timeout or I/O failure is thrown as a ResourceAccessException,
+     * as the RestTemplate call to /close or /cancel would throw it.
+     */
+    private static void await(CompletableFuture<String> end, String lraId) {
+        try {
+            end.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io)
+                throw new ResourceAccessException("I/O error ending LRA " + lraId + ": " + io.getMessage(), io);
+            if (cause instanceof TimeoutException)
+                throw new ResourceAccessException("Timed out ending LRA " + lraId,
+                        new HttpTimeoutException("LRA coordinator did not answer"));
+            throw e;
+        }
     }
 
-    private String withdraw(URI lraId, long accountId, long amount) {
-        log.info("withdraw accountId = " + accountId + ", amount = " + amount);
-        URI accountUri = getTarget(withdrawUri)
+    private String withdraw(String lraId, long accountId, long amount) {
+        URI accountUri = getTarget(accountShards.withdrawUri(accountId))
                 .queryParam("accountId", accountId)
                 .queryParam("amount", amount)
                 .build()
                 .toUri();
-        String withdrawOutcome = restTemplate.postForEntity(accountUri, null, String.class).getBody();
-        log.info("withdraw lraId = " + lraId);
+        long start = System.nanoTime();
+        String withdrawOutcome = null;
+        try {
+            withdrawOutcome = restTemplate.postForEntity(accountUri, null, String.class).getBody();
+        } finally {
+            metrics.recordPhase(start, "withdraw", TransferMetrics.outcome(withdrawOutcome));
+            trace.event(lraId, "withdraw", accountId, amount, withdrawOutcome == null ? "error" : withdrawOutcome, start);
+        }
         return withdrawOutcome;
     }
-    private String deposit(URI lraId, long accountId, long amount) {
-        log.info("deposit accountId = " + accountId + ", amount = " + amount);
-        URI accountUri = getTarget(depositUri)
+    private String deposit(String lraId, long accountId, long amount) {
+        URI accountUri = getTarget(accountShards.depositUri(accountId))
                 .queryParam("accountId", accountId)
                 .queryParam("amount", amount)
                 .build()
                 .toUri();
-        String depositOutcome = restTemplate.postForEntity(accountUri, null, String.class).getBody();
+        long start = System.nanoTime();
+        String depositOutcome = null;
+        try {
+            depositOutcome = restTemplate.postForEntity(accountUri, null, String.class).getBody();
+        } finally {
+            metrics.recordPhase(start, "deposit", TransferMetrics.outcome(depositOutcome));
+            trace.event(lraId, "deposit", accountId, amount, depositOutcome == null ? "error" : depositOutcome, start);
+        }
         return depositOutcome;
     }
 
@@ -108,21 +233,21 @@ public class TransferService {
     @RequestMapping(value = "/processclose", method = RequestMethod.POST)
     @LRA(value = LRA.Type.MANDATORY)
     public ResponseEntity<?> processClose(@RequestHeader(LRA_HTTP_CONTEXT_HEADER) String lraId) {
-        log.info("Process close for transfer : " + lraId);
+        trace.event(lraId, "processclose", null);
         return ResponseEntity.ok().build();
     }
 
     @RequestMapping(value = "/processcancel", method = RequestMethod.POST)
     @LRA(value = LRA.Type.MANDATORY, cancelOn = HttpStatus.OK)
     public ResponseEntity<?> processCancel(@RequestHeader(LRA_HTTP_CONTEXT_HEADER) String lraId) {
-        log.info("Process cancel for transfer : " + lraId);
+        trace.event(lraId, "processcancel", null);
         return ResponseEntity.ok("Process cancel for transfer : " + lraId);
     }
 
 
     // The following two methods could be in an external client.
     // They are included here for convenience.
-    // The transfer method makes a Rest call to close or commit.
+    // Unless transfer.direct-completion is enabled, the transfer method makes a Rest call to close or commit.
     // The close or commit method suspends the LRA (via NOT_SUPPORTED)
     // The close or commit method then proceeds to make a Rest call to the "processclose" or "processcommit" method
     // The "processclose" and "processcommit" methods import the LRA (via MANDATORY)
@@ -130,7 +255,7 @@ public class TransferService {
     @RequestMapping(value = "/close", method = RequestMethod.POST)
     @LRA(value = LRA.Type.NOT_SUPPORTED)
     public ResponseEntity<?> close(@RequestHeader(TRANSFER_ID) String transferId)  {
-        log.info("Received close for transfer : " + transferId);
+        trace.event(transferId, "close.received", null);
 
         HttpHeaders headers = new HttpHeaders();
         headers.add(LRA_HTTP_CONTEXT_HEADER, transferId);
@@ -145,7 +270,7 @@ public class TransferService {
     @RequestMapping(value = "/cancel", method = RequestMethod.POST)
     @LRA(value = LRA.Type.NOT_SUPPORTED, cancelOn = HttpStatus.OK)
     public ResponseEntity<?> cancel(@RequestHeader(TRANSFER_ID) String transferId) {
-        log.info("Received cancel for transfer : " + transferId);
+        trace.event(transferId, "cancel.received", null);
         HttpHeaders headers = new HttpHeaders();
         headers.add(LRA_HTTP_CONTEXT_HEADER, transferId);
         HttpEntity<String> requestEntity = new HttpEntity<>(null, headers);
@@ -163,7 +288,7 @@ public class TransferService {
     @RequestMapping(value = "/afterLra", method = RequestMethod.PUT)
     @AfterLRA
     public ResponseEntity<?> afterLra(@RequestHeader(LRA_HTTP_CONTEXT_HEADER) String lraId)  {
-        log.info("Received afterLra for transfer : " + lraId);
+        trace.event(lraId, "afterLra", null);
         return ResponseEntity.ok().build();
     }
 